@@ -1,15 +1,18 @@
 package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Environment;
 import android.util.Log;
 
+import com.google.zxing.common.BitMatrix;
+
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.Key;
 import java.security.KeyFactory;
@@ -19,16 +22,21 @@ import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Random;
 
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch.BatchGenerator;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch.BatchResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.ImageFormat;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeImageWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyFiles;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyIdentifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
 
 /**
@@ -43,9 +51,16 @@ public class FileHandler {
     private static FileHandler instance = null;
     private SignatureSpecHolder holder;
     private Context context;
+    private PublicKeyStore publicKeyStore;
+    private KeyDirectoryObserver keyDirectoryObserver;
+    private boolean compressingPublicKeys;
+
+    public static synchronized FileHandler getInstance(Context context, SignatureSpecHolder holder) throws IOException {
+        // Keep one file handler, so that its public key store is shared between all activities.
+        if (instance == null)
+            instance = new FileHandler(context, holder);
 
-    public static FileHandler getInstance(Context context, SignatureSpecHolder holder) throws IOException {
-        return instance == null ? new FileHandler(context, holder) : instance;
+        return instance;
     }
 
     private FileHandler(Context context, SignatureSpecHolder holder) throws IOException {
@@ -56,6 +71,24 @@ public class FileHandler {
             createDirectories();
         else
             throw new IOException("External storage not available.");
+
+        publicKeyStore = new PublicKeyStore(holder, new File(context.getExternalFilesDir(null) + "/" + keyDir),
+                "-" + holder.getAlgorithmForKeys().toLowerCase() + ".pub");
+        // Keep the observer referenced, otherwise it stops watching when it is garbage collected.
+        keyDirectoryObserver = new KeyDirectoryObserver(publicKeyStore);
+        keyDirectoryObserver.startWatching();
+    }
+
+    /**
+     * Sets whether public key files are written with a compressed EC point from now on. Such
+     * files are shorter, but older versions of the app cannot read them.
+     */
+    public void setCompressingPublicKeys(boolean compressingPublicKeys) {
+        this.compressingPublicKeys = compressingPublicKeys;
+    }
+
+    public PublicKeyStore getPublicKeyStore() {
+        return publicKeyStore;
     }
 
     public PublicKey getPublicKey(String keyFileName) throws IOException, NoSuchAlgorithmException,
@@ -64,27 +97,34 @@ public class FileHandler {
     }
 
     public List<PublicKey> getPublicKeys() throws IOException, NoSuchAlgorithmException, NoSuchProviderException, InvalidKeySpecException {
-        File file = new File(context.getExternalFilesDir(null) + "/" + keyDir);
-        List<PublicKey> publicKeys = new ArrayList<>();
+        // Public keys are parsed once and kept in memory by the public key store.
+        List<PublicKey> publicKeys = publicKeyStore.getPublicKeys();
 
-        if (!isDirEmpty(file)) {
-            String suffix = "-" + holder.getAlgorithmForKeys().toLowerCase() + ".pub";
+        return publicKeys.isEmpty() ? null : publicKeys;
+    }
 
-            // Iterate through key file names to get all public key files which end with the given suffix.
-            // There could be more than one public key file!
-            for (String fileName : file.list())
-                if (fileName.endsWith(suffix))
-                    // Get public key from public key file and add it to the list.
-                    publicKeys.add(getPublicKey(fileName.split(suffix)[0]));
-        }
+    /**
+     * Returns the public key which belongs to the private key used for signing.
+     *
+     * @return The public key or null if there is no private key file, e.g. if the private key is
+     * kept in the AndroidKeyStore only.
+     */
+    public PublicKey getOwnPublicKey() throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        String fileName = getPrivateKeyFileName();
 
-        return publicKeys.isEmpty() ? null : publicKeys;
+        return fileName == null ? null : getPublicKey(fileName);
     }
 
+    /**
+     * @return The private key used for signing or null if there is no private key file.
+     */
     public PrivateKey getPrivateKey() throws IOException,
             NoSuchProviderException,
             NoSuchAlgorithmException, InvalidKeySpecException {
-        return (PrivateKey) getKey(getPrivateKeyFileName(), false);
+        String fileName = getPrivateKeyFileName();
+
+        return fileName == null ? null : (PrivateKey) getKey(fileName, false);
     }
 
     private String getPrivateKeyFileName() throws IOException {
@@ -113,21 +153,16 @@ public class FileHandler {
             suffix = suffix.concat(".pub");
 
         File file = new File(context.getExternalFilesDir(null) + "/" + keyDir, keyFileName.concat(suffix));
-        byte[] data = readFile(file);
-        byte[] encKey = Arrays.copyOf(data, data.length);
         KeyFactory keyFactory = KeyFactory.getInstance(holder.getAlgorithmForKeys(),
                 holder.getProvider());
+        Log.d(READ_TAG, file.getAbsolutePath());
 
-        KeySpec keySpec;
         // Return public key.
-        if (isPublicKey) {
-            keySpec = new X509EncodedKeySpec(encKey);
-            return keyFactory.generatePublic(keySpec);
-        }
+        if (isPublicKey)
+            return KeyFiles.readPublicKey(file, keyFactory);
 
         // Return private key.
-        keySpec = new PKCS8EncodedKeySpec(encKey);
-        return keyFactory.generatePrivate(keySpec);
+        return KeyFiles.readPrivateKey(file, keyFactory);
     }
 
     public void saveKeyPair(KeyPair keys) throws IOException {
@@ -135,6 +170,26 @@ public class FileHandler {
 
         saveKey(keys.getPrivate(), fileName);
         saveKey(keys.getPublic(), fileName);
+        publicKeyStore.addKey(fileName, keys.getPublic());
+    }
+
+    /**
+     * Writes the public key of a key pair kept elsewhere, e.g. in the AndroidKeyStore, to the key
+     * directory unless it is there already. Thus codes signed with the key pair are verified like
+     * those signed with a key file.
+     */
+    public void savePublicKey(PublicKey key) throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        if (publicKeyStore.getPublicKey(KeyIdentifier.of(key)) != null)
+            return;
+
+        // Parse the key, so a malformed key is rejected before it is saved.
+        KeyFactory keyFactory = KeyFactory.getInstance(holder.getAlgorithmForKeys(), holder.getProvider());
+        PublicKey parsed = keyFactory.generatePublic(new X509EncodedKeySpec(key.getEncoded()));
+        String fileName = getRandomFileName();
+
+        saveKey(parsed, fileName);
+        publicKeyStore.addKey(fileName, parsed);
     }
 
     private void saveKey(Key key, String fileName) throws IOException {
@@ -146,28 +201,51 @@ public class FileHandler {
         File file = new File(context.getExternalFilesDir(null) + "/" + keyDir, fileName.concat(suffix));
 
         if (key instanceof PublicKey) {
-            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(key.getEncoded());
-            writeFile(keySpec.getEncoded(), file);
+            KeyFiles.writePublicKey(file, (PublicKey) key, compressingPublicKeys);
+            Log.d(WRITE_TAG, file.getAbsolutePath());
         } else {
             PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(key.getEncoded());
             writeFile(keySpec.getEncoded(), file);
         }
     }
 
-    public Uri saveQRCode(Bitmap bmp) throws IOException {
+    /**
+     * Writes a QR code image to the codes directory.
+     *
+     * @param m      The QR code's matrix.
+     * @param format The image format.
+     * @return The image's {@link Uri}.
+     */
+    public Uri saveQRCode(BitMatrix m, ImageFormat format) throws IOException {
         String fileName = "qrcode_" + getRandomFileName();
-        File file = new File(context.getExternalFilesDir(null) + "/" + codeDir, fileName.concat(".jpeg"));
+        File file = new File(context.getExternalFilesDir(null) + "/" + codeDir,
+                fileName.concat(".").concat(format.getExtension()));
 
-        saveBitmap(bmp, file);
+        saveImage(m, format, file);
 
         return Uri.parse(file.getAbsolutePath());
     }
 
-    private void saveBitmap(Bitmap bmp, File file) throws IOException {
-        FileOutputStream fos = new FileOutputStream(file);
-        bmp.compress(Bitmap.CompressFormat.JPEG, 100, fos);
-        fos.flush();
-        fos.close();
+    /**
+     * Generates QR codes for all payloads and writes their images to the codes directory.
+     *
+     * @param generator The batch generator holding the signing session.
+     * @param payloads  The payloads.
+     * @return The {@link BatchResult}.
+     */
+    public BatchResult saveQRCodes(BatchGenerator generator, List<String> payloads) throws IOException,
+            InterruptedException {
+        return generator.generate(payloads, new File(context.getExternalFilesDir(null) + "/" + codeDir));
+    }
+
+    private void saveImage(BitMatrix m, ImageFormat format, File file) throws IOException {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            QRCodeImageWriter.write(m, format, QRCodeImageWriter.DEFAULT_SCALE, os);
+        } finally {
+            os.close();
+        }
+        Log.d(WRITE_TAG, file.getAbsolutePath());
     }
 
     public byte[] readFile(File file) throws IOException {
@@ -0,0 +1,50 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav;
+
+import android.os.FileObserver;
+import android.util.Log;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.spec.InvalidKeySpecException;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
+
+/**
+ * Keeps a {@link PublicKeyStore} up to date by watching its key directory for created and deleted
+ * public key files.
+ */
+class KeyDirectoryObserver extends FileObserver {
+    private static final String KEY_STORE_TAG = "Public key store";
+    private static final int WATCH_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.DELETE | FileObserver.MOVED_FROM;
+
+    private final PublicKeyStore store;
+
+    KeyDirectoryObserver(PublicKeyStore store) {
+        super(store.getDirectory().getAbsolutePath(), WATCH_EVENTS);
+        this.store = store;
+    }
+
+    @Override
+    public void onEvent(int event, String path) {
+        String suffix = store.getSuffix();
+
+        if (path == null || !path.endsWith(suffix))
+            return;
+
+        String name = path.substring(0, path.length() - suffix.length());
+
+        if ((event & (FileObserver.DELETE | FileObserver.MOVED_FROM)) != 0) {
+            store.removeKey(name);
+            return;
+        }
+
+        try {
+            store.reloadKey(name);
+        } catch (IOException | NoSuchAlgorithmException | NoSuchProviderException |
+                InvalidKeySpecException e) {
+            Log.e(KEY_STORE_TAG, e.getMessage());
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.security.Security;
 import java.util.Set;
 
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.R;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SignatureScheme;
 
 public class MainActivity extends AppCompatActivity {
     public static final String EXTRA_SPECS_ALGORITHM_FOR_KEYS = "EXTRA_SPECS_ALGORITHM_FOR_KEYS";
@@ -49,9 +50,10 @@ public class MainActivity extends AppCompatActivity {
     */
     private Intent createIntent(Class<?> cls) {
         Intent intent = new Intent(this, cls);
-        // Initialize specifications with ECDSA.
-        intent.putExtra(EXTRA_SPECS_ALGORITHM_FOR_KEYS, "EC");
-        intent.putExtra(EXTRA_SPECS_ALGORITHM_FOR_SIGN, "SHA256withECDSA");
+        // Initialize specifications with ECDSA, since Android's Bouncy Castle does not support Ed25519.
+        SignatureScheme scheme = SignatureScheme.ECDSA_P256;
+        intent.putExtra(EXTRA_SPECS_ALGORITHM_FOR_KEYS, scheme.getKeyAlgorithm());
+        intent.putExtra(EXTRA_SPECS_ALGORITHM_FOR_SIGN, scheme.getSignAlgorithm());
         // Bouncy Castle is the specific security provider supported by Android.
         intent.putExtra(EXTRA_SPECS_PROVIDER, "BC");
 
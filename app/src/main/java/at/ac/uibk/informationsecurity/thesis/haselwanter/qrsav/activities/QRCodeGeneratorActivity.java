@@ -2,62 +2,114 @@ package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.activities;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.Color;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.ShareActionProvider;
 import android.support.v7.widget.Toolbar;
-import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.FileHandler;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.R;
-import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.ImageFormat;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeEncoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRSymbol;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.SymbolOptimizer;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.AndroidKeyStoreKeys;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.rendering.QRCodeRenderer;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.exceptions.NoSignatureSpecHolderException;
-import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairFactory;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopePart;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.FountainEncoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.FountainPacket;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SigningSession;
 
 public class QRCodeGeneratorActivity extends AppCompatActivity {
     private static final String SIGN_MESSAGE_TAG = "Signing message";
     private static final String ENCODE_MESSAGE_TAG = "Encoding message";
     private static final String SAVE_IMAGE_TAG = "Saving image";
     private static final String DELETE_IMAGE_TAG = "Deleting image";
+    private static final String KEY_STORE_TAG = "Android key store";
+    private static final int STAGE_DONE = 0;
+    private static final int STAGE_SIGNING = 1;
+    private static final int STAGE_ENCODING = 2;
+    private static final int STAGE_SAVING = 3;
+    /**
+     * The minimum size of a module on the display, below which the code is hard to scan with
+     * another phone.
+     */
+    private static final float MIN_MODULE_SIZE_DP = 2;
+    /**
+     * Signed messages longer than this are split across several QR codes, each of which is at
+     * most of version 10 at error correction level L and hence still decoded quickly.
+     */
+    private static final int MAX_PART_LENGTH = 256;
+    /**
+     * The length of the blocks of a streamed message, which gives codes of the same size as the
+     * parts of a split message.
+     */
+    private static final int STREAM_BLOCK_LENGTH = MAX_PART_LENGTH - FountainPacket.HEADER_LENGTH;
+    /**
+     * The time each code of a stream is shown. The scanner catches most codes at its frame rate
+     * and decodes the message from any codes it catches.
+     */
+    private static final long STREAM_FRAME_MILLIS = 200;
 
     private SignatureSpecHolder holder;
     private FileHandler fh;
-    private boolean signing, saved;
+    private boolean signing, compressing, streaming, keyStore, saved;
+    private SigningSession session;
+    /**
+     * Whether the session's private key is kept in the AndroidKeyStore.
+     */
+    private boolean sessionInKeyStore;
+    private QRCodeRenderer renderer;
+    private SymbolOptimizer optimizer;
+    private Bitmap shownBitmap;
     private ShareActionProvider shareActionProvider;
     private Intent shareIntent;
     private Uri uriToImage;
+    private GenerateQRCodeTask task;
+    private StreamQRCodeTask streamTask;
+    private ImageFormat format = ImageFormat.PNG;
+    private BitMatrix shownMatrix;
+    private ImageFormat shownFormat = ImageFormat.PNG;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -69,7 +121,7 @@ public class QRCodeGeneratorActivity extends AppCompatActivity {
 
         // Initialize share intent.
         shareIntent = new Intent(Intent.ACTION_SEND);
-        shareIntent.setType("image/jpeg");
+        shareIntent.setType(format.getMimeType());
 
         holder = SignatureSpecHolder.getInstance();
         // Get specifications from MainActivity's intent.
@@ -84,7 +136,13 @@ public class QRCodeGeneratorActivity extends AppCompatActivity {
             Log.e(FileHandler.CREATE_TAG, e.getMessage());
         }
 
+        renderer = new QRCodeRenderer();
+        optimizer = new SymbolOptimizer(ErrorCorrectionLevel.L,
+                MIN_MODULE_SIZE_DP * getResources().getDisplayMetrics().density, SymbolOptimizer.DEFAULT_MARGIN);
         signing = true;
+        compressing = false;
+        streaming = false;
+        keyStore = false;
         saved = false;
         uriToImage = null;
     }
@@ -95,6 +153,7 @@ public class QRCodeGeneratorActivity extends AppCompatActivity {
         getMenuInflater().inflate(R.menu.menu_qrcode_generator, menu);
 
         shareActionProvider = (ShareActionProvider) MenuItemCompat.getActionProvider(menu.findItem(R.id.action_sharing));
+        menu.findItem(R.id.action_key_store).setVisible(AndroidKeyStoreKeys.isSupported(holder));
 
         return true;
     }
@@ -103,6 +162,11 @@ public class QRCodeGeneratorActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
 
+        // Cancel the generation still in progress.
+        if (task != null)
+            task.cancel(true);
+        stopStream();
+
         // Delete old temporarily stored QR code image.
         if (uriToImage != null)
             deleteTempImage();
@@ -131,6 +195,41 @@ public class QRCodeGeneratorActivity extends AppCompatActivity {
                     Toast.makeText(this, R.string.signing_disabled, Toast.LENGTH_SHORT).show();
                 }
                 return true;
+            case R.id.action_compressing:
+                item.setChecked(!item.isChecked());
+                compressing = item.isChecked();
+                Toast.makeText(this, compressing ? R.string.compressing_enabled : R.string.compressing_disabled,
+                        Toast.LENGTH_SHORT).show();
+                return true;
+            case R.id.action_key_store:
+                item.setChecked(!item.isChecked());
+                setKeyStore(item.isChecked());
+                Toast.makeText(this, keyStore ? R.string.key_store_enabled : R.string.key_store_disabled,
+                        Toast.LENGTH_SHORT).show();
+                return true;
+            case R.id.action_compressing_keys:
+                if (fh != null) {
+                    item.setChecked(!item.isChecked());
+                    fh.setCompressingPublicKeys(item.isChecked());
+                    Toast.makeText(this, item.isChecked() ? R.string.compressing_keys_enabled
+                            : R.string.compressing_keys_disabled, Toast.LENGTH_SHORT).show();
+                }
+                return true;
+            case R.id.action_streaming:
+                item.setChecked(!item.isChecked());
+                streaming = item.isChecked();
+                if (!streaming)
+                    stopStream();
+                Toast.makeText(this, streaming ? R.string.streaming_enabled : R.string.streaming_disabled,
+                        Toast.LENGTH_SHORT).show();
+                return true;
+            case R.id.action_format_png:
+            case R.id.action_format_svg:
+            case R.id.action_format_pbm:
+                item.setChecked(true);
+                format = item.getItemId() == R.id.action_format_png ? ImageFormat.PNG
+                        : item.getItemId() == R.id.action_format_svg ? ImageFormat.SVG : ImageFormat.PBM;
+                return true;
             default:
                 break;
         }
@@ -143,16 +242,17 @@ public class QRCodeGeneratorActivity extends AppCompatActivity {
      */
     private void updateShareIntent() {
         if (shareActionProvider != null && uriToImage != null) {
+            shareIntent.setType(shownFormat.getMimeType());
             shareIntent.putExtra(Intent.EXTRA_STREAM, Uri.parse("file://" + uriToImage.getPath()));
             shareActionProvider.setShareIntent(shareIntent);
         }
     }
 
     /**
-     * Generates a signed QR code from the input text.
+     * Generates a signed QR code from the input text. Signing, encoding and saving the QR code
+     * run in the background. Pressing the button again cancels a generation still in progress.
      */
     public void generateQRCode(View v) {
-        ImageView img = (ImageView) findViewById(R.id.img_qrcode);
         String text = ((EditText) findViewById(R.id.input_text)).getText().toString();
 
         // Empty message not allowed!
@@ -163,141 +263,423 @@ public class QRCodeGeneratorActivity extends AppCompatActivity {
 
         Log.d("Gen Data QR Code", text);
 
-        // Signing enabled.
-        if (signing) {
-            // Generate signature.
-            SignatureEntity sig = null;
+        // Cancel the generation still in progress.
+        if (task != null)
+            task.cancel(true);
+        stopStream();
+
+        // The code is chosen for the size it is shown at.
+        View image = findViewById(R.id.img_qrcode);
+        int targetSize = image.getWidth() > 0 ? image.getWidth() : image.getLayoutParams().width;
+
+        task = new GenerateQRCodeTask(signing, compressing, streaming, format, shownBitmap, targetSize);
+        task.execute(text);
+    }
+
+    /**
+     * Shows the progress stage of the QR code generation.
+     *
+     * @param stage One of {@link #STAGE_SIGNING}, {@link #STAGE_ENCODING} and {@link #STAGE_SAVING}
+     *              or {@link #STAGE_DONE} if the generation finished or has been cancelled.
+     */
+    private void showProgress(int stage) {
+        TextView label = (TextView) findViewById(R.id.your_code);
+
+        switch (stage) {
+            case STAGE_SIGNING:
+                label.setText(R.string.progress_signing);
+                break;
+            case STAGE_ENCODING:
+                label.setText(R.string.progress_encoding);
+                break;
+            case STAGE_SAVING:
+                label.setText(R.string.progress_saving);
+                break;
+            default:
+                label.setText(R.string.your_code);
+                break;
+        }
+    }
+
+    /**
+     * Shows the version, size, error correction level and mode of the generated QR code and
+     * warns if its modules are too small to be scanned reliably. Of the parts of a split message
+     * the first one is shown, which is the largest, and of a stream its first code.
+     *
+     * @param symbols The generated QR codes.
+     * @param blocks  The number of blocks of a streamed message or 0 if it is not streamed.
+     */
+    private void showSymbols(List<QRSymbol> symbols, int blocks) {
+        QRSymbol symbol = symbols.get(0);
+        float density = getResources().getDisplayMetrics().density;
+        String mode = symbol.getMode().name().toLowerCase(Locale.US);
+        TextView label = (TextView) findViewById(R.id.your_code);
+
+        if (blocks > 0)
+            label.setText(getString(R.string.your_code_stream, blocks, symbol.getVersion(),
+                    symbol.getDimension(), symbol.getErrorCorrectionLevel(), mode, symbol.getModuleSize() / density));
+        else if (symbols.size() > 1)
+            label.setText(getString(R.string.your_code_parts, symbols.size(), symbol.getVersion(),
+                    symbol.getDimension(), symbol.getErrorCorrectionLevel(), mode, symbol.getModuleSize() / density));
+        else
+            label.setText(getString(R.string.your_code_symbol, symbol.getVersion(), symbol.getDimension(),
+                    symbol.getErrorCorrectionLevel(), mode, symbol.getModuleSize() / density));
+
+        for (QRSymbol s : symbols) {
+            if (!s.meetsTarget()) {
+                Toast.makeText(this, R.string.encoding_too_dense, Toast.LENGTH_LONG).show();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Shows the generated QR code image and uses its temporarily stored image for sharing.
+     */
+    private void showQRCode(BitMatrix m, Bitmap bmp, ImageFormat format, Uri uri) {
+        showBitmap(bmp);
+        shownMatrix = m;
+        shownFormat = format;
+
+        // Delete old temporarily stored QR code image.
+        if (uriToImage != null)
+            deleteTempImage();
+
+        uriToImage = uri;
+        // Update share intent.
+        if (uriToImage != null) {
+            updateShareIntent();
+            saved = false;
+        } else
+            Log.e(SAVE_IMAGE_TAG, "QR code not saved temporarily");
+    }
+
+    /**
+     * Shows the first code of a stream and starts cycling the following codes. A stream is not
+     * stored, since a single code does not hold the message.
+     */
+    private void showStream(Bitmap bmp, FountainEncoder encoder, QRSymbol first) {
+        showBitmap(bmp);
+        shownMatrix = null;
+
+        // Delete old temporarily stored QR code image.
+        if (uriToImage != null)
+            deleteTempImage();
+
+        streamTask = new StreamQRCodeTask(encoder, first, bmp);
+        // Run on the thread pool, since the stream runs until it is stopped.
+        streamTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void stopStream() {
+        if (streamTask != null) {
+            streamTask.cancel(true);
+            streamTask = null;
+        }
+    }
+
+    private void showBitmap(Bitmap bmp) {
+        // The image has one pixel per module and is scaled up by the view, which must not blur
+        // the modules.
+        BitmapDrawable drawable = new BitmapDrawable(getResources(), bmp);
+        drawable.setFilterBitmap(false);
+        ((ImageView) findViewById(R.id.img_qrcode)).setImageDrawable(drawable);
+        shownBitmap = bmp;
+    }
+
+    /**
+     * Signs, encodes and temporarily stores a QR code in the background.
+     */
+    private class GenerateQRCodeTask extends AsyncTask<String, Integer, Bitmap> {
+        private final boolean signing, compressing, streaming;
+        private final ImageFormat format;
+        private final Bitmap inUse;
+        private final int targetSize;
+        private BitMatrix matrix;
+        private List<QRSymbol> symbols;
+        private FountainEncoder stream;
+        private Uri uri;
+        private int error;
+
+        /**
+         * @param signing     Whether the text has to be signed.
+         * @param compressing Whether the text is compressed before signing.
+         * @param streaming   Whether a text too long for one code is streamed instead of split.
+         * @param format      The image format of the stored image.
+         * @param inUse       The bitmap which is currently shown and must not be reused.
+         * @param targetSize  The size the QR code is shown at in pixels.
+         */
+        GenerateQRCodeTask(boolean signing, boolean compressing, boolean streaming, ImageFormat format,
+                           Bitmap inUse, int targetSize) {
+            this.signing = signing;
+            this.compressing = compressing;
+            this.streaming = streaming;
+            this.format = format;
+            this.inUse = inUse;
+            this.targetSize = targetSize;
+            uri = null;
+            error = 0;
+        }
+
+        @Override
+        protected Bitmap doInBackground(String... params) {
+            String text = params[0];
+            // The alternative contents of each QR code.
+            List<List<String>> codes = Collections.singletonList(Collections.singletonList(text));
+
+            // Signing enabled.
+            if (signing) {
+                publishProgress(STAGE_SIGNING);
+
+                // Sign the input String, append the signature and put the signer's key
+                // identifier in front of it.
+                try {
+                    SigningSession session = getSigningSession();
+                    session.setCompressed(compressing);
+
+                    long start = System.nanoTime();
+                    byte[] envelope = session.signEnvelope(text);
+                    Log.d(SIGN_MESSAGE_TAG, String.format(Locale.US, "Signed in %.2f ms with %s",
+                            (System.nanoTime() - start) / 1e6, sessionInKeyStore ? "key store" : "key file"));
+
+                    // Split or stream long messages, which are signed once as a whole. A stream
+                    // starts with the first packet.
+                    List<byte[]> parts;
+                    if (envelope.length <= MAX_PART_LENGTH)
+                        parts = Collections.singletonList(envelope);
+                    else if (streaming) {
+                        stream = new FountainEncoder(envelope, STREAM_BLOCK_LENGTH);
+                        parts = Collections.singletonList(stream.packet(0));
+                    } else
+                        parts = EnvelopePart.split(envelope, MAX_PART_LENGTH);
+
+                    // The optimizer chooses the encoding which gives the smaller code.
+                    codes = new ArrayList<>(parts.size());
+                    for (byte[] part : parts)
+                        codes.add(Arrays.asList(EnvelopeEncoding.BYTE.toContent(part),
+                                EnvelopeEncoding.BASE45.toContent(part)));
+                } catch (IllegalArgumentException e) {
+                    Log.e(SIGN_MESSAGE_TAG, e.getMessage());
+                    error = R.string.encoding_too_big_failed;
+                    return null;
+                } catch (NoSuchAlgorithmException | NoSuchProviderException |
+                        NoSignatureSpecHolderException | SignatureException |
+                        InvalidKeyException | InvalidKeySpecException |
+                        InvalidAlgorithmParameterException | IOException e) {
+                    Log.e(SIGN_MESSAGE_TAG, e.getMessage());
+                    error = R.string.signature_create_failed;
+                    return null;
+                }
+            }
+
+            if (isCancelled())
+                return null;
+
+            publishProgress(STAGE_ENCODING);
+
+            // Encode input String and convert it to a Bitmap object.
+            Bitmap bmp;
             try {
-                sig = generateSignature(text.getBytes());
-            } catch (NoSuchAlgorithmException | NoSuchProviderException |
-                    NoSignatureSpecHolderException | SignatureException |
-                    InvalidKeyException | InvalidKeySpecException |
-                    InvalidAlgorithmParameterException | IOException e) {
-                Log.e(SIGN_MESSAGE_TAG, e.getMessage());
+                // The parts are shown side by side, each in a cell of the target size.
+                double cellSize = (double) targetSize / QRCodeEncoder.getColumns(codes.size());
+                List<BitMatrix> matrices = new ArrayList<>(codes.size());
+                symbols = new ArrayList<>(codes.size());
+
+                for (List<String> contents : codes) {
+                    QRSymbol symbol = optimizer.optimize(contents, cellSize);
+                    Log.d("Generate QR Code", "Content: " + symbol.getContent());
+                    Log.d("Generate QR Code", "Symbol: " + symbol);
+                    symbols.add(symbol);
+                    matrices.add(symbol.getMatrix());
+                }
+
+                matrix = matrices.size() == 1 ? matrices.get(0) : QRCodeEncoder.tile(matrices);
+                bmp = renderer.render(matrix, inUse);
+            } catch (WriterException | IllegalArgumentException e) {
+                Log.e(ENCODE_MESSAGE_TAG, e.getMessage());
+
+                if (e.getMessage().contains("Data too big"))
+                    error = R.string.encoding_too_big_failed;
+                return null;
             }
 
-            if (sig == null) {
-                Toast.makeText(this, R.string.signature_create_failed, Toast.LENGTH_SHORT).show();
-                return;
+            if (isCancelled())
+                return null;
+
+            // Store QR code image temporarily.
+            if (stream == null) {
+                publishProgress(STAGE_SAVING);
+                uri = saveQRCodeAsImage(matrix, format);
             }
 
-            // Append signature to input String.
-            text = text.concat(sig.toString());
+            return bmp;
         }
 
-        // Determine optimal size for QR code image.
-        // Find screen size.
-        DisplayMetrics metrics = new DisplayMetrics();
-        getWindowManager().getDefaultDisplay().getMetrics(metrics);
-        int width = metrics.widthPixels;
-        int height = metrics.heightPixels;
-        // Find optimal size for QR code image.
-        int minDisplayScale = width < height ? width : height;
-        int minImageScale = img.getWidth() < img.getHeight() ? img.getWidth() : img.getHeight();
-        int minScale = minDisplayScale < minImageScale ? minDisplayScale : minImageScale;
-
-        // Encode input String and convert it to a Bitmap object.
-        Log.d("Generate QR Code", "Content: " + text);
-        Log.d("Generate QR Code", "Length: " + text.getBytes().length + " bytes");
-        Bitmap bmp = encodeToBitmap(text, minScale);
-
-        // Show generated QR code image.
-        if (bmp != null) {
-            img.setImageBitmap(bmp);
-            // Delete old temporarily stored QR code image.
-            if (uriToImage != null)
-                deleteTempImage();
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            showProgress(values[0]);
+        }
 
-            // Store QR code image temporarily.
-            uriToImage = saveQRCodeAsImage();
-            // Update share intent.
-            if (uriToImage != null) {
-                updateShareIntent();
-                saved = false;
-            } else
-                Log.e(SAVE_IMAGE_TAG, "QR code not saved temporarily");
+        @Override
+        protected void onPostExecute(Bitmap bmp) {
+            showProgress(STAGE_DONE);
+
+            // Show generated QR code image.
+            if (bmp != null && stream != null) {
+                showStream(bmp, stream, symbols.get(0));
+                showSymbols(symbols, stream.getBlockCount());
+            } else if (bmp != null) {
+                showQRCode(matrix, bmp, format, uri);
+                showSymbols(symbols, 0);
+            } else if (error != 0)
+                Toast.makeText(QRCodeGeneratorActivity.this, error, Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        protected void onCancelled(Bitmap bmp) {
+            showProgress(STAGE_DONE);
+
+            // Delete the image which has been stored before the generation has been cancelled.
+            if (uri != null && new File(uri.getPath()).delete())
+                Log.d(DELETE_IMAGE_TAG, "'" + uri.getPath() + "' deleted");
         }
     }
 
     /**
-     * Encodes the given String to a QR code by using ZXing's {@link QRCodeWriter} and transforms it to a {@link Bitmap}.
-     *
-     * @param text The String to encode.
-     * @param size The size of the generated image.
-     * @return The new {@link Bitmap}.
+     * Shows the codes of a stream one after another until it is cancelled. Each code carries
+     * another packet of the message, encoded like the first code.
+     * <p>
+     * Each stream renders with its own {@link QRCodeRenderer}. A cancelled stream may still be
+     * rendering a code, which then cannot overwrite the bitmaps of the next generation or stream.
+     * </p>
      */
-    private Bitmap encodeToBitmap(String text, int size) {
-        BitMatrix m = null;
-
-        try {
-            // Character encoding using UTF-8.
-            Map<EncodeHintType, String> hints = new HashMap<>();
-            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-            m = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size, hints);
-        } catch (WriterException | IllegalArgumentException e) {
-            Log.e(ENCODE_MESSAGE_TAG, e.getMessage());
-
-            if (e.getMessage().contains("Data too big"))
-                Toast.makeText(this, R.string.encoding_too_big_failed, Toast.LENGTH_SHORT).show();
+    private class StreamQRCodeTask extends AsyncTask<Void, Bitmap, Void> {
+        private final FountainEncoder encoder;
+        private final EnvelopeEncoding encoding;
+        private final ErrorCorrectionLevel level;
+        private final int margin;
+        private final QRCodeRenderer streamRenderer;
+        private Bitmap inUse;
+
+        /**
+         * @param encoder The encoder of the streamed message.
+         * @param first   The first code of the stream.
+         * @param inUse   The bitmap of the first code, which is currently shown.
+         */
+        StreamQRCodeTask(FountainEncoder encoder, QRSymbol first, Bitmap inUse) {
+            this.encoder = encoder;
+            encoding = first.getMode() == Mode.BYTE ? EnvelopeEncoding.BYTE : EnvelopeEncoding.BASE45;
+            level = first.getErrorCorrectionLevel();
+            margin = first.getMargin();
+            streamRenderer = new QRCodeRenderer();
+            this.inUse = inUse;
         }
 
-        if (m == null)
-            return null;
+        @Override
+        protected Void doInBackground(Void... params) {
+            try {
+                for (int i = 1; !isCancelled(); i++) {
+                    long start = SystemClock.uptimeMillis();
 
-        int height = m.getHeight();
-        int width = m.getWidth();
-        Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-        int[] pixels = new int[width * height];
+                    // The renderer alternates between two bitmaps, so the shown one is kept.
+                    BitMatrix m = QRCodeEncoder.encode(encoding.toContent(encoder.packet(i)), level, margin);
+                    Bitmap bmp = streamRenderer.render(m, inUse);
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                pixels[y * width + x] = m.get(x, y) ? Color.BLACK : Color.WHITE;
+                    if (isCancelled())
+                        break;
+                    inUse = bmp;
+                    publishProgress(inUse);
+
+                    Thread.sleep(Math.max(0, STREAM_FRAME_MILLIS - (SystemClock.uptimeMillis() - start)));
+                }
+            } catch (WriterException e) {
+                Log.e(ENCODE_MESSAGE_TAG, e.getMessage());
+            } catch (InterruptedException e) {
+                // Stream stopped.
             }
-        }
 
-        bmp.setPixels(pixels, 0, width, 0, 0, width, height);
+            return null;
+        }
 
-        return bmp;
+        @Override
+        protected void onProgressUpdate(Bitmap... values) {
+            if (!isCancelled())
+                showBitmap(values[0]);
+        }
     }
 
     /**
-     * Generates a signature for the specific data.
+     * Returns the signing session, which loads the private key only once for all QR codes.
      *
-     * @param data The data to be signed.
-     * @return The new {@link SignatureEntity}.
+     * @return The {@link SigningSession}.
      */
-    private SignatureEntity generateSignature(byte[] data) throws NoSuchAlgorithmException,
+    private synchronized SigningSession getSigningSession() throws NoSuchAlgorithmException,
             NoSuchProviderException, NoSignatureSpecHolderException, IOException,
-            SignatureException, InvalidKeyException, InvalidKeySpecException,
-            InvalidAlgorithmParameterException {
+            InvalidKeyException, InvalidKeySpecException, InvalidAlgorithmParameterException {
+        if (session != null)
+            return session;
+
+        // Keep the private key in the key store if enabled. If the key store fails, e.g. on a
+        // device with a broken implementation, the key files are used instead.
+        if (keyStore && AndroidKeyStoreKeys.isSupported(holder)) {
+            try {
+                KeyPair keys = AndroidKeyStoreKeys.getOrGenerate();
+                fh.savePublicKey(keys.getPublic());
+                session = new SigningSession(holder, AndroidKeyStoreKeys.newSignature(holder), keys.getPrivate(),
+                        keys.getPublic(), EnvelopeEncoding.BYTE);
+                sessionInKeyStore = true;
+
+                return session;
+            } catch (GeneralSecurityException | IOException e) {
+                Log.w(KEY_STORE_TAG, "Falling back to key files: " + e.getMessage());
+            }
+        }
+
+        sessionInKeyStore = false;
+
         // Either get the private key from its key file or generate a new key pair, store it
         // on storage if it does not exist and get the private key from them.
-        PrivateKey key;
-        if (fh.existsKeyPair())
-            // Get private key by its file name.
-            key = fh.getPrivateKey();
+        PrivateKey privateKey = fh.existsKeyPair() ? fh.getPrivateKey() : null;
+        PublicKey publicKey = privateKey == null ? null : fh.getOwnPublicKey();
+
+        if (publicKey != null)
+            session = new SigningSession(holder, privateKey, publicKey);
         else {
             // Generate new key pair and save them.
             KeyPairFactory factory = new KeyPairFactory(holder);
             KeyPair keys = factory.generate();
             fh.saveKeyPair(keys);
-            // Get only private key for generating the signature.
-            key = keys.getPrivate();
+            session = new SigningSession(holder, keys.getPrivate(), keys.getPublic());
         }
 
-        // Generate new signature.
-        return (new SignatureHandler(holder)).sign(data, key);
+        return session;
+    }
+
+    /**
+     * Sets whether the private key is kept in the AndroidKeyStore. The next QR code is signed with
+     * the key of the chosen backend.
+     */
+    private synchronized void setKeyStore(boolean keyStore) {
+        this.keyStore = keyStore;
+        session = null;
     }
 
     private Uri saveQRCodeAsImage() {
+        if (shownMatrix == null) {
+            Log.e(SAVE_IMAGE_TAG, "No QR code to save");
+            return null;
+        }
+
+        return saveQRCodeAsImage(shownMatrix, format);
+    }
+
+    private Uri saveQRCodeAsImage(BitMatrix m, ImageFormat format) {
         Uri uriToImage = null;
-        ImageView img = (ImageView) findViewById(R.id.img_qrcode);
 
         try {
-            Bitmap bmp = ((BitmapDrawable) img.getDrawable()).getBitmap();
-            uriToImage = fh.saveQRCode(bmp);
+            uriToImage = fh.saveQRCode(m, format);
             Log.d(SAVE_IMAGE_TAG, uriToImage.getPath());
-        } catch (NullPointerException | IOException e) {
+        } catch (IOException e) {
             Log.e(SAVE_IMAGE_TAG, e.getMessage());
         }
 
@@ -3,8 +3,6 @@ package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.activities;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.hardware.Camera;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -26,47 +24,43 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.gms.vision.CameraSource;
-import com.google.android.gms.vision.barcode.Barcode;
-import com.google.android.gms.vision.barcode.BarcodeDetector;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.ChecksumException;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.FormatException;
-import com.google.zxing.LuminanceSource;
-import com.google.zxing.NotFoundException;
-import com.google.zxing.RGBLuminanceSource;
-import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
+import com.google.android.gms.vision.Detector;
 
 import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.reflect.Field;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.PublicKey;
-import java.security.SignatureException;
-import java.security.spec.InvalidKeySpecException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.FileHandler;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.R;
-import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
-import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding.ScanWindow;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner.FrameScanResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner.QRCodeDetector;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner.ScanPipeline;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner.VerdictOverlayView;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanVerifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.VerificationCache;
 
 public class QRCodeScannerActivity extends AppCompatActivity {
-    private static final String VERIFY_MESSAGE_TAG = "Verifying message";
-    private static final String DECODE_MESSAGE_TAG = "Decoding message";
+    /**
+     * The viewfinder in the centre of the preview, which is searched for single codes. The
+     * window is square, hence it is the same for upright and rotated frames.
+     */
+    private static final ScanWindow VIEWFINDER = ScanWindow.centered(0.7f);
+    private static final int CACHE_SIZE = 256;
+    /**
+     * Codes scanned again within this time, e.g. at a turnstile, are not verified again.
+     */
+    private static final long CACHE_TTL_MILLIS = 60 * 1000;
 
     private CameraSource cam;
-    private BarcodeDetector detector;
+    private QRCodeDetector detector;
+    private ScanPipeline pipeline;
     private SurfaceHolder surfaceHolder;
     private TextView codeContent, verifyResult;
+    private VerdictOverlayView verdictOverlay;
     private ShareActionProvider shareActionProvider;
     private Intent shareIntent;
 
@@ -83,6 +77,7 @@ public class QRCodeScannerActivity extends AppCompatActivity {
 
         codeContent = (EditText) findViewById(R.id.codeContent);
         verifyResult = (TextView) findViewById(R.id.verifyResult);
+        verdictOverlay = (VerdictOverlayView) findViewById(R.id.verdict_overlay);
 
         // Initialize share intent.
         shareIntent = new Intent(Intent.ACTION_SEND);
@@ -104,6 +99,28 @@ public class QRCodeScannerActivity extends AppCompatActivity {
             Log.e(FileHandler.CREATE_TAG, e.getMessage());
         }
 
+        // Decode and verify preview frames in the background and show the results.
+        pipeline = new ScanPipeline(new ScanVerifier(specHolder, fh == null ? null : fh.getPublicKeyStore(),
+                new VerificationCache(CACHE_SIZE, CACHE_TTL_MILLIS)), new ScanPipeline.Listener() {
+            @Override
+            public void onScanResult(ScanResult result) {
+                showScanResult(result);
+            }
+
+            @Override
+            public void onFrameScanResult(FrameScanResult result) {
+                showFrameScanResult(result);
+            }
+
+            @Override
+            public void onPartScanned(int received, int count) {
+                verifyResult.setTextColor(getResources().getColor(R.color.colorPrimary));
+                verifyResult.setText(getResources().getString(R.string.verify_result_parts, received, count));
+            }
+        });
+        pipeline.setContinuous(true);
+        setMultiCode(false);
+
         // Open camera and preview.
         openCamera();
         initCameraView();
@@ -127,6 +144,7 @@ public class QRCodeScannerActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         releaseCamera();
+        pipeline.shutdown();
     }
 
     @Override
@@ -142,9 +160,45 @@ public class QRCodeScannerActivity extends AppCompatActivity {
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_continuous:
+                item.setChecked(!item.isChecked());
+                pipeline.setContinuous(item.isChecked());
+                if (item.isChecked()) {
+                    Toast.makeText(this, R.string.continuous_enabled, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, R.string.continuous_disabled, Toast.LENGTH_SHORT).show();
+                }
+                return true;
+            case R.id.action_multi_code:
+                item.setChecked(!item.isChecked());
+                setMultiCode(item.isChecked());
+                if (item.isChecked()) {
+                    Toast.makeText(this, R.string.multi_code_enabled, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, R.string.multi_code_disabled, Toast.LENGTH_SHORT).show();
+                }
+                return true;
+            default:
+                break;
+        }
+
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Switches between scanning single codes within the viewfinder and all codes of the whole
+     * frame.
+     */
+    private void setMultiCode(boolean multiCode) {
+        ScanWindow window = multiCode ? ScanWindow.FULL : VIEWFINDER;
+
+        pipeline.setMultiCode(multiCode);
+        pipeline.setScanWindow(window);
+        verdictOverlay.setScanWindow(window);
+        verdictOverlay.setFrameScanResult(null);
+    }
+
     /**
      * Updates the share intent.
      */
@@ -156,176 +210,78 @@ public class QRCodeScannerActivity extends AppCompatActivity {
     }
 
     /**
-     * Scans a detected QR code, decodes it and verifies the message's signature.
+     * Starts scanning the camera's preview frames until the next QR code is decoded.
      */
     public void scanQRCode(View v) {
-        cam.takePicture(null, new CameraSource.PictureCallback() {
-            @Override
-            public void onPictureTaken(byte[] data) {
-                // Try to decode QR code.
-                String decString = decode(data);
-
-                // No QR code detected.
-                if (decString == null || decString.length() == 0) {
-                    // Call setText method inside the post method of the TextView,
-                    // otherwise it will not run on the UI thread.
-                    // Failing to do so will lead to a runtime error.
-                    codeContent.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            codeContent.setText("");
-                            updateShareIntent();
-                        }
-                    });
-
-                    verifyResult.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            verifyResult.setTextColor(getResources().getColor(
-                                    R.color.colorPrimary));
-                            verifyResult.setText(getResources().getString(R.string.verify_result_default));
-                        }
-                    });
+        // Reset the result of the previous scan.
+        codeContent.setText("");
+        verdictOverlay.setFrameScanResult(null);
+        updateShareIntent();
+        verifyResult.setTextColor(getResources().getColor(R.color.colorPrimary));
+        verifyResult.setText(getResources().getString(R.string.verify_result_default));
 
-                    return;
-                }
+        pipeline.startScanning();
+    }
 
-                Log.d("Decoded string", decString);
-
-                SignatureHandler sh = new SignatureHandler(specHolder);
-                // Split decoded String into data part and signature part.
-                final String[] dataSign = sh.getContent(decString);
-
-                // QR code contains a signature.
-                if (dataSign.length == 2) {
-                    boolean verifies = false;
-
-                    try {
-                        // Get signature bytes in ISO-8859-1 format.
-                        SignatureEntity sign = new SignatureEntity(
-                                dataSign[1].getBytes("ISO-8859-1"));
-                        // Get public keys.
-                        List<PublicKey> pks = fh.getPublicKeys();
-
-                        // No public key was found.
-                        if (pks == null)
-                            throw new InvalidKeyException("No public key found");
-
-                        // Try all available public keys to verify signature.
-                        for (PublicKey key : pks)
-                            if (verifies = sh.verify(sign, dataSign[0].getBytes("UTF-8"), key))
-                                break;
-                    } catch (NoSuchAlgorithmException | NoSuchProviderException |
-                            SignatureException | InvalidKeyException |
-                            InvalidKeySpecException | IOException e) {
-                        Log.e(VERIFY_MESSAGE_TAG, e.getMessage());
-                    }
+    /**
+     * Shows the result of a scanned QR code, i.e. its content and whether its signature is valid.
+     *
+     * @param result The {@link ScanResult} delivered by the scan pipeline.
+     */
+    private void showScanResult(ScanResult result) {
+        Log.d("Decoded text", "Content: " + result.getContent());
+        Log.d("Decoded text", "Length: " + result.getContent().getBytes().length + " bytes");
 
-                    // Signature is valid.
-                    if (verifies) {
-                        // Call setText method inside the post method of the TextView,
-                        // otherwise it will not run on the UI thread.
-                        // Failing to do so will lead to a runtime error.
-                        codeContent.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                codeContent.setText(dataSign[0]);
-                                Log.d("Decoded text", "Content: " + dataSign[0]);
-                                Log.d("Decoded text", "Length: " + dataSign[0].getBytes().length + " bytes");
-                                updateShareIntent();
-                            }
-                        });
-
-                        verifyResult.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                verifyResult.setTextColor(getResources().getColor(
-                                        R.color.colorValid));
-                                verifyResult.setText(getResources().getString(R.string.verify_result_success));
-                            }
-                        });
-                    }
-                    // Signature is invalid.
-                    else {
-                        // Call setText method inside the post method of the TextView,
-                        // otherwise it will not run on the UI thread.
-                        // Failing to do so will lead to a runtime error.
-                        codeContent.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                codeContent.setText("");
-                                updateShareIntent();
-                            }
-                        });
-
-                        verifyResult.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                verifyResult.setTextColor(getResources().getColor(
-                                        R.color.colorInvalid));
-                                verifyResult.setText(getResources().getString(R.string.verify_result_failed));
-                            }
-                        });
-                    }
-                }
-                // QR code does not contain a signature.
-                else {
-                    // Call setText method inside the post method of the TextView,
-                    // otherwise it will not run on the UI thread.
-                    // Failing to do so will lead to a runtime error.
-                    codeContent.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            codeContent.setText(dataSign[0]);
-                            Log.d("Decoded text", "Content: " + dataSign[0]);
-                            Log.d("Decoded text", "Length: " + dataSign[0].getBytes().length + " bytes");
-                            updateShareIntent();
-                        }
-                    });
-
-                    verifyResult.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            verifyResult.setTextColor(getResources().getColor(
-                                    R.color.colorGray));
-                            verifyResult.setText(getResources().getString(R.string.verify_result_no));
-                        }
-                    });
-                }
-            }
-        });
+        codeContent.setText(result.getContent());
+        updateShareIntent();
+
+        switch (result.getStatus()) {
+            // Signature is valid.
+            case VALID:
+                verifyResult.setTextColor(getResources().getColor(R.color.colorValid));
+                verifyResult.setText(getResources().getString(R.string.verify_result_success));
+                break;
+            // Signature is invalid.
+            case INVALID:
+                verifyResult.setTextColor(getResources().getColor(R.color.colorInvalid));
+                verifyResult.setText(getResources().getString(R.string.verify_result_failed));
+                break;
+            // QR code does not contain a signature.
+            default:
+                verifyResult.setTextColor(getResources().getColor(R.color.colorGray));
+                verifyResult.setText(getResources().getString(R.string.verify_result_no));
+                break;
+        }
     }
 
     /**
-     * Decodes the given (QR code) data by transforming it to a {@link BinaryBitmap} first and then
-     * giving it to the ZXing's {@link QRCodeReader} as input.
+     * Shows the results of all QR codes of a frame, i.e. a box in the colour of its verdict
+     * around each code, the number of codes per verdict and the contents of the valid codes.
      *
-     * @param data The data to be decoded.
-     * @return The decoded QR code content.
+     * @param result The {@link FrameScanResult} delivered by the scan pipeline.
      */
-    private String decode(byte[] data) {
-        Bitmap bmp = BitmapFactory.decodeByteArray(data, 0, data.length);
-        int[] intData = new int[bmp.getWidth() * bmp.getHeight()];
-        bmp.getPixels(intData, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+    private void showFrameScanResult(FrameScanResult result) {
+        Log.d("Decoded frame", "Codes: " + result.getCodes().size());
 
-        LuminanceSource src = new RGBLuminanceSource(bmp.getWidth(), bmp.getHeight(), intData);
-        BinaryBitmap bbmp = new BinaryBitmap(new HybridBinarizer(src));
+        verdictOverlay.setFrameScanResult(result);
 
-        Result r = null;
-        try {
-            // Character decoding using ISO-8859-1.
-            Map<DecodeHintType, String> hints = new HashMap<>();
-            hints.put(DecodeHintType.CHARACTER_SET, "UTF-8");
-            r = new QRCodeReader().decode(bbmp, hints);
-        } catch (NotFoundException e) {
-            Log.e(DECODE_MESSAGE_TAG, "No code found");
-        } catch (ChecksumException e) {
-            Log.e(DECODE_MESSAGE_TAG, "Checksum feature failed");
-        } catch (FormatException e) {
-            Log.e(DECODE_MESSAGE_TAG, "Wrong format");
+        StringBuilder contents = new StringBuilder();
+        for (FrameScanResult.Code code : result.getCodes()) {
+            if (code.getResult().getStatus() == ScanResult.Status.VALID) {
+                if (contents.length() > 0)
+                    contents.append('\n');
+                contents.append(code.getResult().getContent());
+            }
         }
+        codeContent.setText(contents);
+        updateShareIntent();
 
-        return r == null ? null : r.getText();
+        int invalid = result.count(ScanResult.Status.INVALID);
+        verifyResult.setTextColor(getResources().getColor(invalid > 0 ? R.color.colorInvalid
+                : R.color.colorValid));
+        verifyResult.setText(getResources().getString(R.string.verify_result_codes,
+                result.count(ScanResult.Status.VALID), invalid,
+                result.count(ScanResult.Status.NO_SIGNATURE)));
     }
 
     /******************************************************************************************
@@ -371,18 +327,26 @@ public class QRCodeScannerActivity extends AppCompatActivity {
         // Check if device has a camera.
         if (checkCameraHardware(this)) {
             if (cam == null) {
-                // Init barcode detector.
-                // Detector currently not in use but is needed for capturing!
-                // Images will be captured using CameraSource.takePicture(), otherwise detector
-                // throws exception due to smileys and other symbols could not be captured.
-                detector = new BarcodeDetector.Builder(this).setBarcodeFormats(
-                        Barcode.QR_CODE).build();
+                // Init QR code detector which hands the camera's preview frames over to the scan pipeline.
+                // The processor is required by the detector, but results are delivered by the pipeline.
+                detector = new QRCodeDetector(pipeline);
+                detector.setProcessor(new Detector.Processor<ScanResult>() {
+                    @Override
+                    public void receiveDetections(Detector.Detections<ScanResult> detections) {
+                    }
+
+                    @Override
+                    public void release() {
+                    }
+                });
                 // Init camera.
                 DisplayMetrics metrics = new DisplayMetrics();
                 ((WindowManager) getSystemService(WINDOW_SERVICE)).getDefaultDisplay()
                         .getMetrics(metrics);
                 cam = new CameraSource.Builder(this, detector).setRequestedPreviewSize(
                         metrics.widthPixels, metrics.heightPixels).build();
+                // Start scanning as soon as the preview is running.
+                pipeline.startScanning();
             }
         }
     }
@@ -0,0 +1,78 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SignatureScheme;
+
+/**
+ * Keeps the signing key pair in the AndroidKeyStore, which is backed by secure hardware on most
+ * devices running Android 6.0 or later. The private key is generated in the key store and never
+ * leaves it, hence it is neither written to storage nor read and parsed before signing. The key
+ * store hands out a handle to the key, which is kept for all signatures of a signing session.
+ * <p>
+ * Only ECDSA on P-256 is supported, since it is the scheme of the app.
+ * </p>
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public final class AndroidKeyStoreKeys {
+    public static final String PROVIDER = "AndroidKeyStore";
+    private static final String ALIAS = "qrsav-signing";
+
+    private AndroidKeyStoreKeys() {
+    }
+
+    /**
+     * Returns whether the signing key can be kept in the AndroidKeyStore with the given
+     * specifications, i.e. on Android 6.0 or later with ECDSA on P-256.
+     */
+    public static boolean isSupported(SignatureSpecHolder holder) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && SignatureScheme.of(holder) == SignatureScheme.ECDSA_P256;
+    }
+
+    /**
+     * Returns the signing key pair of the key store and generates it if it does not exist yet.
+     *
+     * @return The key pair, whose private key is a handle to the key in the key store.
+     */
+    public static KeyPair getOrGenerate() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(PROVIDER);
+        keyStore.load(null);
+
+        KeyStore.Entry entry = keyStore.getEntry(ALIAS, null);
+        if (entry instanceof KeyStore.PrivateKeyEntry) {
+            KeyStore.PrivateKeyEntry keys = (KeyStore.PrivateKeyEntry) entry;
+            return new KeyPair(keys.getCertificate().getPublicKey(), keys.getPrivateKey());
+        }
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_EC, PROVIDER);
+        generator.initialize(new KeyGenParameterSpec.Builder(ALIAS, KeyProperties.PURPOSE_SIGN)
+                .setAlgorithmParameterSpec(new ECGenParameterSpec("secp256r1"))
+                .setDigests(KeyProperties.DIGEST_SHA256)
+                .build());
+
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Creates a {@link Signature} for the key store's keys. They cannot be used with the
+     * configured provider, e.g. Bouncy Castle, hence the platform chooses the provider.
+     *
+     * @param holder The signature specifications.
+     */
+    public static Signature newSignature(SignatureSpecHolder holder) throws GeneralSecurityException {
+        return Signature.getInstance(holder.getAlgorithmForSign());
+    }
+}
@@ -0,0 +1,88 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeEncoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodePixels;
+
+/**
+ * Renders QR codes to {@link Bitmap}s with one pixel per module. Scaling the image up is left to
+ * the view showing it.
+ * <p>
+ * The renderer reuses its pixel buffer and two bitmaps between calls, hence regenerating codes
+ * of the same version allocates no image memory. The two bitmaps are used alternately, so the
+ * bitmap which is currently shown is never overwritten.
+ * </p>
+ */
+public class QRCodeRenderer {
+    private final Bitmap[] bitmaps;
+    private int[] pixels;
+    private BitArray row;
+
+    public QRCodeRenderer() {
+        bitmaps = new Bitmap[2];
+    }
+
+    /**
+     * Encodes the given String to a QR code by using the core {@link QRCodeEncoder}.
+     *
+     * @param text The String to encode.
+     * @return The QR code's matrix with one bit per module.
+     * @throws WriterException If the String cannot be encoded, e.g. because it is too big.
+     */
+    public BitMatrix encode(String text) throws WriterException {
+        return QRCodeEncoder.encode(text);
+    }
+
+    /**
+     * Encodes the given String to a QR code and renders it.
+     *
+     * @param text  The String to encode.
+     * @param inUse The bitmap which is currently shown and must not be overwritten, or null.
+     * @return The rendered {@link Bitmap}.
+     * @throws WriterException If the String cannot be encoded, e.g. because it is too big.
+     */
+    public Bitmap render(String text, Bitmap inUse) throws WriterException {
+        return render(encode(text), inUse);
+    }
+
+    /**
+     * Renders a QR code's matrix row by row into a reused {@link Bitmap}.
+     *
+     * @param m     The QR code's matrix, where set bits are black modules.
+     * @param inUse The bitmap which is currently shown and must not be overwritten, or null.
+     * @return The rendered {@link Bitmap}.
+     */
+    public synchronized Bitmap render(BitMatrix m, Bitmap inUse) {
+        int width = m.getWidth();
+        int height = m.getHeight();
+
+        if (pixels == null || pixels.length < width * height)
+            pixels = new int[width * height];
+
+        // Write the pixel buffer sequentially, one matrix row after another.
+        row = QRCodePixels.fill(m, pixels, row, Color.BLACK, Color.WHITE);
+
+        Bitmap bmp = obtainBitmap(width, height, inUse);
+        bmp.setPixels(pixels, 0, width, 0, 0, width, height);
+
+        return bmp;
+    }
+
+    private Bitmap obtainBitmap(int width, int height, Bitmap inUse) {
+        int i = bitmaps[0] == inUse && inUse != null ? 1 : 0;
+        Bitmap bmp = bitmaps[i];
+
+        if (bmp == null || bmp.getWidth() != width || bmp.getHeight() != height) {
+            bmp = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+            bitmaps[i] = bmp;
+        }
+
+        return bmp;
+    }
+}
@@ -0,0 +1,76 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner;
+
+import java.util.Collections;
+import java.util.List;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+
+/**
+ * The immutable results of all QR codes decoded in one frame, together with their locations in
+ * the upright frame.
+ */
+public final class FrameScanResult {
+    /**
+     * The result and location of one QR code of the frame.
+     */
+    public static final class Code {
+        private final ScanResult result;
+        private final float[] points;
+
+        Code(ScanResult result, float[] points) {
+            this.result = result;
+            this.points = points;
+        }
+
+        public ScanResult getResult() {
+            return result;
+        }
+
+        /**
+         * Returns the x and y coordinates of the code's finder and alignment patterns within the
+         * upright frame, i.e. x0, y0, x1, y1 and so on.
+         */
+        public float[] getPoints() {
+            return points.clone();
+        }
+    }
+
+    private final List<Code> codes;
+    private final int width, height;
+
+    FrameScanResult(List<Code> codes, int width, int height) {
+        this.codes = Collections.unmodifiableList(codes);
+        this.width = width;
+        this.height = height;
+    }
+
+    public List<Code> getCodes() {
+        return codes;
+    }
+
+    /**
+     * Returns the width of the upright frame.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the upright frame.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of codes with the given status.
+     */
+    public int count(ScanResult.Status status) {
+        int count = 0;
+        for (Code code : codes)
+            if (code.getResult().getStatus() == status)
+                count++;
+
+        return count;
+    }
+}
@@ -0,0 +1,34 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+
+/**
+ * A {@link Detector} which hands the camera's preview frames over to a {@link ScanPipeline}.
+ * The NV21 preview data is decoded directly, hence there is no JPEG encoding and decoding round
+ * trip as with taking a picture.
+ * <p>
+ * The detector returns immediately, so the camera's frame processing thread is never blocked by
+ * decoding or verifying. Results are not returned by {@link #detect(Frame)}, but delivered to the
+ * pipeline's {@link ScanPipeline.Listener}.
+ * </p>
+ */
+public class QRCodeDetector extends Detector<ScanResult> {
+    private final ScanPipeline pipeline;
+
+    public QRCodeDetector(ScanPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public SparseArray<ScanResult> detect(Frame frame) {
+        pipeline.submitFrame(frame.getGrayscaleImageData(), frame.getMetadata().getWidth(),
+                frame.getMetadata().getHeight(), frame.getMetadata().getRotation());
+
+        return new SparseArray<>();
+    }
+}
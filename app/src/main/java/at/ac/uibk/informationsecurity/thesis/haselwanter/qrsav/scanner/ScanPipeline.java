@@ -0,0 +1,425 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding.DecodedCode;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding.QRCodeDecoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding.ScanWindow;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopePart;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.FountainPacket;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.FountainDecoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.PartCollector;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanVerifier;
+
+/**
+ * Processes camera preview frames in two stages running on their own worker threads: decoding
+ * the QR code of a frame and verifying its signature. Hence the camera is never blocked and the
+ * next frame is decoded while the previous code is still being verified.
+ * <p>
+ * Both stages use bounded queues. Frames arriving while the decode stage is busy are skipped.
+ * Frames are searched within the {@link ScanWindow} only, and single codes are first searched at
+ * half the resolution.
+ * The {@link ScanResult} of each verified code is delivered to the {@link Listener} on the UI
+ * thread.
+ * </p>
+ * <p>
+ * In multi-code mode all QR codes of a frame are decoded at once and verified in parallel, and
+ * their results are delivered together as {@link FrameScanResult}. Frames arriving while the
+ * codes of the previous frame are being verified are skipped.
+ * </p>
+ * <p>
+ * The parts of a document split across several codes (see {@link EnvelopePart}) are collected
+ * by the decode stage in any order, in multi-code mode also several parts per frame. Likewise the
+ * packets of a streamed document (see {@link FountainPacket}) are decoded from whichever frames
+ * are caught. The document is verified once all of its parts or enough packets have been
+ * collected. Parts and packets are collected per document, so several documents side by side in
+ * multi-code mode are collected at the same time. The progress is that of the document of the
+ * last part or packet.
+ * </p>
+ */
+public class ScanPipeline {
+    /**
+     * Receives the results of the pipeline on the UI thread.
+     */
+    public interface Listener {
+        void onScanResult(ScanResult result);
+
+        /**
+         * Receives the results of all codes of a frame in multi-code mode.
+         */
+        void onFrameScanResult(FrameScanResult result);
+
+        /**
+         * Receives the progress of collecting the parts of a document split across several codes
+         * or of decoding the blocks of a streamed document.
+         *
+         * @param received The number of parts collected or blocks decoded so far.
+         * @param count    The number of parts or blocks of the document.
+         */
+        void onPartScanned(int received, int count);
+    }
+
+    private static final int FRAME_QUEUE_CAPACITY = 1;
+    /**
+     * One luminance buffer for the frame being decoded and one for each queued frame.
+     */
+    private static final int FRAME_BUFFERS = FRAME_QUEUE_CAPACITY + 1;
+    private static final int VERIFY_QUEUE_CAPACITY = 4;
+    private static final int VERIFY_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int DOWNSCALE_FACTOR = 2;
+
+    private final QRCodeDecoder decoder;
+    private final ScanVerifier verifier;
+    private final Listener listener;
+    private final Handler mainHandler;
+    private final ThreadPoolExecutor decodeExecutor, verifyExecutor;
+    private final ExecutorService codesExecutor;
+    private final BlockingQueue<byte[]> frameBuffers;
+    private final PartCollector parts;
+    private final FountainDecoder stream;
+    private final AtomicBoolean scanning, verifyingFrame;
+    private volatile boolean continuous, multiCode;
+    private volatile ScanWindow window;
+    private volatile String lastText;
+
+    public ScanPipeline(ScanVerifier verifier, Listener listener) {
+        this.decoder = new QRCodeDecoder();
+        decoder.setDownscaleFactor(DOWNSCALE_FACTOR);
+        this.verifier = verifier;
+        this.listener = listener;
+        mainHandler = new Handler(Looper.getMainLooper());
+        // One decoding thread, since the decoder is not thread-safe. Frames which do not fit into
+        // the queue are rejected and skipped.
+        decodeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(FRAME_QUEUE_CAPACITY), new ThreadPoolExecutor.AbortPolicy());
+        // Decoded codes must not get lost, so the decode stage verifies them itself if the verify
+        // stage is overloaded.
+        verifyExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(VERIFY_QUEUE_CAPACITY), new ThreadPoolExecutor.CallerRunsPolicy());
+        // Verifies the codes of a frame in multi-code mode in parallel.
+        codesExecutor = Executors.newFixedThreadPool(VERIFY_THREADS);
+        frameBuffers = new ArrayBlockingQueue<>(FRAME_BUFFERS);
+        parts = new PartCollector();
+        stream = new FountainDecoder();
+        scanning = new AtomicBoolean(false);
+        verifyingFrame = new AtomicBoolean(false);
+        continuous = false;
+        multiCode = false;
+        window = ScanWindow.FULL;
+        lastText = null;
+    }
+
+    /**
+     * Starts scanning preview frames until the next QR code is decoded. The parts and packets of
+     * a split or streamed document which have been collected so far are discarded.
+     */
+    public void startScanning() {
+        lastText = null;
+        parts.reset();
+        stream.reset();
+        scanning.set(true);
+    }
+
+    /**
+     * Resumes scanning preview frames, but ignores the QR code which has been decoded last.
+     * This avoids delivering the same code again and again while it stays in front of the camera.
+     */
+    public void resumeScanning() {
+        scanning.set(true);
+    }
+
+    /**
+     * Stops scanning preview frames.
+     */
+    public void stopScanning() {
+        scanning.set(false);
+    }
+
+    public boolean isScanning() {
+        return scanning.get();
+    }
+
+    /**
+     * Sets whether scanning continues after a QR code is decoded. Otherwise scanning stops at the
+     * first decoded code.
+     */
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    /**
+     * Sets the part of the frames which is searched for QR codes, e.g. the area of the
+     * viewfinder. The whole frame by default.
+     */
+    public void setScanWindow(ScanWindow window) {
+        this.window = window;
+    }
+
+    /**
+     * Sets whether all QR codes of a frame are decoded and delivered together. Otherwise a single
+     * code is decoded per frame.
+     */
+    public void setMultiCode(boolean multiCode) {
+        this.multiCode = multiCode;
+    }
+
+    /**
+     * Hands a preview frame over to the decode stage. The frame's luminance plane is copied, so
+     * the caller may reuse the frame buffer afterwards. The luminance buffers are recycled once
+     * their frame is decoded, hence continuous scanning allocates no new frame-sized arrays.
+     *
+     * @param data     The preview frame in NV21 format.
+     * @param width    The frame's width.
+     * @param height   The frame's height.
+     * @param rotation The number of clockwise quarter turns which make the frame upright.
+     * @return true if the frame is going to be decoded; false if it is skipped.
+     */
+    public boolean submitFrame(ByteBuffer data, final int width, final int height, final int rotation) {
+        // Skip the frame if not scanning or if the decode stage is still busy.
+        if (!scanning.get() || decodeExecutor.getQueue().remainingCapacity() == 0)
+            return false;
+
+        byte[] buffer = frameBuffers.poll();
+        // Buffers of another preview size are dropped.
+        if (buffer == null || buffer.length != width * height)
+            buffer = new byte[width * height];
+
+        final byte[] luminance = buffer;
+        ByteBuffer buf = data.duplicate();
+        buf.rewind();
+        buf.get(luminance);
+
+        try {
+            decodeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        decoder.setScanWindow(window);
+                        if (multiCode)
+                            decodeFrameCodes(luminance, width, height, rotation);
+                        else
+                            decodeFrame(luminance, width, height);
+                    } finally {
+                        frameBuffers.offer(luminance);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            frameBuffers.offer(luminance);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops both stages. Frames and codes which are still queued are discarded.
+     */
+    public void shutdown() {
+        scanning.set(false);
+        decodeExecutor.shutdownNow();
+        verifyExecutor.shutdownNow();
+        codesExecutor.shutdownNow();
+    }
+
+    private void decodeFrame(byte[] luminance, int width, int height) {
+        if (!scanning.get())
+            return;
+
+        String decoded = decoder.decode(luminance, width, height);
+
+        // Ignore frames without code and the code which has been decoded last.
+        if (decoded == null || decoded.length() == 0 || decoded.equals(lastText))
+            return;
+
+        final String text = collect(decoded);
+
+        // Keep scanning until a split or streamed document is complete.
+        if (text == null) {
+            lastText = decoded;
+            return;
+        }
+
+        // Stop at the first decoded code unless scanning continuously.
+        if (!continuous && !scanning.compareAndSet(true, false))
+            return;
+
+        lastText = text;
+
+        try {
+            verifyExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(verifier.verify(text));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pipeline has been shut down.
+        }
+    }
+
+    private void decodeFrameCodes(byte[] luminance, final int width, final int height, final int rotation) {
+        // Skip the frame while the codes of the previous frame are still being verified.
+        if (!scanning.get() || verifyingFrame.get())
+            return;
+
+        final List<DecodedCode> codes = decoder.decodeAll(luminance, width, height);
+
+        // Collect the parts and packets of a split or streamed document and verify the document in
+        // place of its last part.
+        for (int i = codes.size() - 1; i >= 0; i--) {
+            String content = codes.get(i).getContent();
+            String collected = collect(content);
+
+            if (collected == null)
+                codes.remove(i);
+            else if (!collected.equals(content))
+                codes.set(i, new DecodedCode(collected, codes.get(i).getPoints()));
+        }
+
+        if (codes.isEmpty())
+            return;
+
+        // Stop at the first frame with codes unless scanning continuously.
+        if (!continuous && !scanning.compareAndSet(true, false))
+            return;
+
+        verifyingFrame.set(true);
+
+        try {
+            verifyExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        deliver(verifyCodes(codes, width, height, rotation));
+                    } catch (InterruptedException e) {
+                        // Pipeline has been shut down.
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        verifyingFrame.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pipeline has been shut down.
+            verifyingFrame.set(false);
+        }
+    }
+
+    private FrameScanResult verifyCodes(List<DecodedCode> codes, int width, int height, int rotation)
+            throws InterruptedException {
+        List<String> contents = new ArrayList<>(codes.size());
+        for (DecodedCode code : codes)
+            contents.add(code.getContent());
+
+        List<ScanResult> results = verifier.verifyAll(contents, codesExecutor, VERIFY_THREADS);
+        List<FrameScanResult.Code> located = new ArrayList<>(codes.size());
+
+        for (int i = 0; i < codes.size(); i++)
+            located.add(new FrameScanResult.Code(results.get(i), rotate(codes.get(i).getPoints(), width, height, rotation)));
+
+        return rotation % 2 == 0 ? new FrameScanResult(located, width, height)
+                : new FrameScanResult(located, height, width);
+    }
+
+    /**
+     * Maps points of a frame to the frame turned clockwise by the given quarter turns.
+     */
+    private static float[] rotate(float[] points, int width, int height, int rotation) {
+        for (int i = 0; i < points.length; i += 2) {
+            float x = points[i], y = points[i + 1];
+
+            switch (rotation & 3) {
+                case 1:
+                    points[i] = height - y;
+                    points[i + 1] = x;
+                    break;
+                case 2:
+                    points[i] = width - x;
+                    points[i + 1] = height - y;
+                    break;
+                case 3:
+                    points[i] = y;
+                    points[i + 1] = width - x;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return points;
+    }
+
+    private void deliver(final FrameScanResult result) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFrameScanResult(result);
+            }
+        });
+    }
+
+    /**
+     * Collects decoded content if it is a part or a packet of a split or streamed document and
+     * delivers the progress.
+     *
+     * @param content The decoded content.
+     * @return The content itself if it is neither a part nor a packet, the document if it is
+     * complete now or null if it is not.
+     */
+    private String collect(String content) {
+        EnvelopePart part = EnvelopePart.parse(content);
+        if (part != null) {
+            String document = parts.add(part);
+            if (document == null)
+                deliverProgress(parts.getReceived(), parts.getCount());
+            return document;
+        }
+
+        FountainPacket packet = FountainPacket.parse(content);
+        if (packet != null) {
+            String document = stream.add(packet);
+            if (document == null)
+                deliverProgress(stream.getDecoded(), stream.getBlockCount());
+            return document;
+        }
+
+        return content;
+    }
+
+    private void deliverProgress(final int received, final int count) {
+        // Nothing to report if the parts or packets did not make up a valid document.
+        if (count == 0)
+            return;
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onPartScanned(received, count);
+            }
+        });
+    }
+
+    private void deliver(final ScanResult result) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onScanResult(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.scanner;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.R;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding.ScanWindow;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+
+/**
+ * Draws a box in the colour of its verdict around each QR code of a {@link FrameScanResult} and
+ * the outline of the {@link ScanWindow}, i.e. the viewfinder. The view is laid over the camera
+ * preview and the frame is stretched to the view's size, as the preview is.
+ */
+public class VerdictOverlayView extends View {
+    /**
+     * The finder patterns' centres are 3.5 modules inside the code's corners, hence the box
+     * around them is widened by this fraction of its size on each side.
+     */
+    private static final float MARGIN = 0.15f;
+
+    private final Paint stroke, fill, viewfinder;
+    private final RectF box;
+    private FrameScanResult result;
+    private ScanWindow window;
+
+    public VerdictOverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        stroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+        stroke.setStyle(Paint.Style.STROKE);
+        stroke.setStrokeWidth(3 * getResources().getDisplayMetrics().density);
+        fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fill.setStyle(Paint.Style.FILL);
+        viewfinder = new Paint(Paint.ANTI_ALIAS_FLAG);
+        viewfinder.setStyle(Paint.Style.STROKE);
+        viewfinder.setStrokeWidth(getResources().getDisplayMetrics().density);
+        viewfinder.setColor(getResources().getColor(R.color.colorGray));
+        box = new RectF();
+        window = ScanWindow.FULL;
+    }
+
+    /**
+     * Shows the outline of the part of the frames which is searched for QR codes. A window
+     * covering the whole frame is not shown.
+     */
+    public void setScanWindow(ScanWindow window) {
+        this.window = window;
+        invalidate();
+    }
+
+    /**
+     * Shows the verdicts of a frame.
+     *
+     * @param result The frame's results or null to clear the overlay.
+     */
+    public void setFrameScanResult(FrameScanResult result) {
+        this.result = result;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (window != ScanWindow.FULL) {
+            int left = window.getLeft(getWidth()), top = window.getTop(getHeight());
+            canvas.drawRect(left, top, left + window.getWidth(getWidth()), top + window.getHeight(getHeight()),
+                    viewfinder);
+        }
+
+        if (result == null || result.getWidth() == 0 || result.getHeight() == 0)
+            return;
+
+        float sx = (float) getWidth() / result.getWidth();
+        float sy = (float) getHeight() / result.getHeight();
+
+        for (FrameScanResult.Code code : result.getCodes()) {
+            float[] points = code.getPoints();
+            if (points.length == 0)
+                continue;
+
+            box.set(points[0], points[1], points[0], points[1]);
+            for (int i = 2; i < points.length; i += 2)
+                box.union(points[i], points[i + 1]);
+            box.inset(-MARGIN * box.width(), -MARGIN * box.height());
+            box.set(box.left * sx, box.top * sy, box.right * sx, box.bottom * sy);
+
+            int color = getColor(code.getResult().getStatus());
+            stroke.setColor(color);
+            // Translucent fill in the same colour.
+            fill.setColor((color & 0x00FFFFFF) | 0x40000000);
+            canvas.drawRect(box, fill);
+            canvas.drawRect(box, stroke);
+        }
+    }
+
+    private int getColor(ScanResult.Status status) {
+        switch (status) {
+            case VALID:
+                return getResources().getColor(R.color.colorValid);
+            case INVALID:
+                return getResources().getColor(R.color.colorInvalid);
+            default:
+                return getResources().getColor(R.color.colorGray);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which reports the allocation rate per operation next
+ * to the throughput.
+ * <p>
+ * Usage: <code>BenchmarkMain [&lt;benchmark regex&gt; ...]</code>
+ * </p>
+ * <p>
+ * Without arguments all benchmarks of this package are run. The security provider is SunEC unless
+ * set with the system property <code>qrsav.provider</code>.
+ * </p>
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class);
+
+        if (args.length == 0)
+            options.include(BenchmarkMain.class.getPackage().getName() + ".*");
+        else
+            for (String regex : args)
+                options.include(regex);
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,92 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding.QRCodeDecoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding.ScanWindow;
+
+/**
+ * Decoding a camera frame with ZXing's {@link QRCodeReader}, either from ARGB pixels as the
+ * former picture-based scanner did or directly from the preview frame's luminance plane. The
+ * {@link QRCodeDecoder} searches the luminance plane within a viewfinder window only, optionally
+ * downscaled first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param({"640x480", "1920x1080"})
+    public String frameSize;
+
+    private int width, height;
+    private byte[] luminance;
+    private int[] argb;
+    private QRCodeReader reader;
+    private Map<DecodeHintType, Object> hints;
+    private QRCodeDecoder windowDecoder, downscaleDecoder;
+
+    @Setup
+    public void setUp() throws Exception {
+        String[] size = frameSize.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        luminance = Fixtures.luminanceFrame(Fixtures.encode(Fixtures.payload(150)), width, height);
+        argb = Fixtures.argbFrame(luminance);
+        reader = new QRCodeReader();
+        hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.CHARACTER_SET, "UTF-8");
+        windowDecoder = new QRCodeDecoder();
+        windowDecoder.setScanWindow(ScanWindow.centered(0.7f));
+        downscaleDecoder = new QRCodeDecoder();
+        downscaleDecoder.setScanWindow(ScanWindow.centered(0.7f));
+        downscaleDecoder.setDownscaleFactor(2);
+    }
+
+    @Benchmark
+    public Result decodeRgb() throws Exception {
+        RGBLuminanceSource src = new RGBLuminanceSource(width, height, argb);
+        return reader.decode(new BinaryBitmap(new HybridBinarizer(src)), hints);
+    }
+
+    @Benchmark
+    public Result decodeLuminance() throws Exception {
+        PlanarYUVLuminanceSource src = new PlanarYUVLuminanceSource(luminance, width, height, 0, 0,
+                width, height, false);
+        return reader.decode(new BinaryBitmap(new HybridBinarizer(src)), hints);
+    }
+
+    @Benchmark
+    public String decodeWindow() {
+        return windowDecoder.decode(luminance, width, height);
+    }
+
+    @Benchmark
+    public String decodeWindowDownscaled() {
+        return downscaleDecoder.decode(luminance, width, height);
+    }
+}
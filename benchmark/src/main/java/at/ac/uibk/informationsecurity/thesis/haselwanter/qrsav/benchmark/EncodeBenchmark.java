@@ -0,0 +1,117 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.ImageFormat;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeImageWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodePixels;
+
+/**
+ * Encoding a payload with ZXing's {@link QRCodeWriter}, filling the pixel buffer and writing the
+ * image files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+    /**
+     * The image size the generator used to request from ZXing, i.e. the smaller screen side.
+     */
+    private static final int SCREEN_SIZE = 1080;
+
+    @Param({"50", "200"})
+    public int payloadLength;
+
+    private String payload;
+    private Map<EncodeHintType, Object> hints;
+    private BitMatrix modules, screen;
+    private int[] pixels;
+    private BitArray row;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws Exception {
+        payload = Fixtures.payload(payloadLength);
+        hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        modules = Fixtures.encode(payload);
+        screen = new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, SCREEN_SIZE, SCREEN_SIZE, hints);
+        pixels = new int[modules.getWidth() * modules.getHeight()];
+        out = new ByteArrayOutputStream();
+    }
+
+    @Benchmark
+    public BitMatrix encodeModules() throws Exception {
+        return new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, 0, 0, hints);
+    }
+
+    @Benchmark
+    public BitMatrix encodeScreenSized() throws Exception {
+        return new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, SCREEN_SIZE, SCREEN_SIZE, hints);
+    }
+
+    /**
+     * The renderer's fill: module resolution, reused buffers, row by row.
+     */
+    @Benchmark
+    public int[] fillPixels() {
+        row = QRCodePixels.fill(modules, pixels, row, BLACK, WHITE);
+        return pixels;
+    }
+
+    /**
+     * The former encodeToBitmap() fill: screen resolution, new buffer, column by column.
+     */
+    @Benchmark
+    public int[] fillPixelsScreenSized() {
+        int width = screen.getWidth();
+        int height = screen.getHeight();
+        int[] pixels = new int[width * height];
+
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
+                pixels[y * width + x] = screen.get(x, y) ? BLACK : WHITE;
+
+        return pixels;
+    }
+
+    @Benchmark
+    public int writePng() throws Exception {
+        out.reset();
+        QRCodeImageWriter.write(modules, ImageFormat.PNG, QRCodeImageWriter.DEFAULT_SCALE, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeSvg() throws Exception {
+        out.reset();
+        QRCodeImageWriter.write(modules, ImageFormat.SVG, QRCodeImageWriter.DEFAULT_SCALE, out);
+        return out.size();
+    }
+}
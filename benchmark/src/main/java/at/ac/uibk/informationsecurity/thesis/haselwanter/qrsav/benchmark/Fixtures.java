@@ -0,0 +1,112 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.util.Random;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeEncoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SignatureScheme;
+
+/**
+ * Reproducible inputs for the benchmarks. Keys and payloads are derived from fixed seeds, so every
+ * run measures the same data.
+ */
+final class Fixtures {
+    /**
+     * The security provider. Bouncy Castle is Android's provider, the JVM uses SunEC by default.
+     */
+    static final String PROVIDER = System.getProperty("qrsav.provider", "SunEC");
+    static final String KEY_ALGORITHM = "EC";
+    static final String SIGN_ALGORITHM = "SHA256withECDSA";
+
+    private static final String[] WORDS = {"pallet", "batch", "lot", "serial", "expiry", "origin",
+            "weight", "kg", "order", "customer", "warehouse", "shelf", "item", "quantity"};
+
+    private Fixtures() {
+    }
+
+    static SignatureSpecHolder specHolder() {
+        SignatureSpecHolder holder = SignatureSpecHolder.getInstance();
+        holder.setSpecs(KEY_ALGORITHM, SIGN_ALGORITHM, PROVIDER);
+        return holder;
+    }
+
+    /**
+     * Generates the P-256 key pair with the given number. The same number always yields the same
+     * key pair.
+     */
+    static KeyPair keyPair(int seed) throws GeneralSecurityException {
+        return keyPair(SignatureScheme.ECDSA_P256, seed);
+    }
+
+    /**
+     * Generates the key pair of a signature scheme with the given number.
+     */
+    static KeyPair keyPair(SignatureScheme scheme, int seed) throws GeneralSecurityException {
+        SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+        random.setSeed(seed);
+
+        return scheme.generateKeyPair(PROVIDER, random);
+    }
+
+    /**
+     * Builds a label-like text payload of the given length.
+     */
+    static String payload(int length) {
+        Random random = new Random(length);
+        StringBuilder sb = new StringBuilder(length);
+
+        while (sb.length() < length)
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ').append(random.nextInt(10000)).append(' ');
+
+        return sb.substring(0, length);
+    }
+
+    /**
+     * Encodes a text like the app at module resolution.
+     */
+    static BitMatrix encode(String text) throws WriterException {
+        return QRCodeEncoder.encode(text);
+    }
+
+    /**
+     * Renders a QR code into the center of a gray camera frame.
+     *
+     * @return The frame's luminance plane.
+     */
+    static byte[] luminanceFrame(BitMatrix m, int width, int height) {
+        byte[] frame = new byte[width * height];
+        int scale = Math.min(width, height) / 2 / m.getWidth();
+        int left = (width - m.getWidth() * scale) / 2;
+        int top = (height - m.getHeight() * scale) / 2;
+
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                int mx = (x - left) / scale;
+                int my = (y - top) / scale;
+                boolean inCode = x >= left && y >= top && mx < m.getWidth() && my < m.getHeight();
+                frame[y * width + x] = (byte) (inCode && m.get(mx, my) ? 30 : inCode ? 230 : 160);
+            }
+
+        return frame;
+    }
+
+    /**
+     * Converts a luminance plane to ARGB pixels as delivered by a decoded camera picture.
+     */
+    static int[] argbFrame(byte[] luminance) {
+        int[] pixels = new int[luminance.length];
+
+        for (int i = 0; i < luminance.length; i++) {
+            int l = luminance[i] & 0xFF;
+            pixels[i] = 0xFF000000 | l << 16 | l << 8 | l;
+        }
+
+        return pixels;
+    }
+}
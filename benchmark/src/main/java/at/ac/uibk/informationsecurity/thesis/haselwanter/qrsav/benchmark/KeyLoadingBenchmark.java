@@ -0,0 +1,89 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyIdentifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
+
+/**
+ * Looking up the public keys for a scan: loading the key directory with
+ * {@link PublicKeyStore#load()}, which the scanner did per scan before the store kept the keys,
+ * compared to looking up a key in the store's in-memory index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyLoadingBenchmark {
+    private static final String SUFFIX = "-ec.pub";
+
+    @Param({"1", "10", "50"})
+    public int keyCount;
+
+    private File dir;
+    private PublicKeyStore store;
+    private String keyId;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = File.createTempFile("qrsav-keys", "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("Cannot create \'" + dir.getAbsolutePath() + "\'");
+
+        for (int i = 0; i < keyCount; i++) {
+            KeyPair keys = Fixtures.keyPair(i);
+            FileOutputStream fos = new FileOutputStream(new File(dir, i + SUFFIX));
+            try {
+                fos.write(keys.getPublic().getEncoded());
+            } finally {
+                fos.close();
+            }
+
+            keyId = KeyIdentifier.of(keys.getPublic());
+        }
+
+        store = new PublicKeyStore(Fixtures.specHolder(), dir, SUFFIX);
+        store.load();
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public List<PublicKey> loadKeyDirectory() throws Exception {
+        store.load();
+        return store.getPublicKeys();
+    }
+
+    @Benchmark
+    public PublicKey lookUpKeyId() throws Exception {
+        return store.getPublicKey(keyId);
+    }
+}
@@ -0,0 +1,64 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SignatureScheme;
+
+/**
+ * Signing and verifying the same payload with each {@link SignatureScheme}. The
+ * {@link Signature} objects are reused, so only the scheme's own cost is measured. Ed25519
+ * requires a provider which supports it, e.g. SunEC of Java 15 or later.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemeBenchmark {
+    @Param({"ECDSA_P256", "ED25519"})
+    private SignatureScheme scheme;
+
+    private KeyPair keys;
+    private Signature signer;
+    private Signature verifier;
+    private byte[] data;
+    private byte[] signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        keys = Fixtures.keyPair(scheme, 1);
+        signer = Signature.getInstance(scheme.getSignAlgorithm(), Fixtures.PROVIDER);
+        verifier = Signature.getInstance(scheme.getSignAlgorithm(), Fixtures.PROVIDER);
+        data = Fixtures.payload(100).getBytes("UTF-8");
+        signature = sign();
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        signer.initSign(keys.getPrivate());
+        signer.update(data);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        verifier.initVerify(keys.getPublic());
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
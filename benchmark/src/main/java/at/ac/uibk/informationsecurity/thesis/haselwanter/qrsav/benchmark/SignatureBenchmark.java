@@ -0,0 +1,113 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SigningSession;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanVerifier;
+
+/**
+ * Signing and verifying a payload with {@link SignatureHandler}, which creates its
+ * {@link java.security.Signature} per call, compared to a reused {@link SigningSession}. Verifying
+ * decoded content with the {@link ScanVerifier} includes parsing the envelope and the key lookup.
+ * A stack of codes of three signers is verified one by one and as one batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+    private static final int STACK_SIZE = 30;
+
+    private SignatureHandler handler;
+    private SigningSession session;
+    private KeyPair keys;
+    private byte[] data;
+    private SignatureEntity signature;
+    private ScanVerifier verifier;
+    private String content;
+    private List<String> stack;
+
+    @Setup
+    public void setUp() throws Exception {
+        SignatureSpecHolder holder = Fixtures.specHolder();
+        keys = Fixtures.keyPair(1);
+        handler = new SignatureHandler(holder);
+        session = new SigningSession(holder, keys.getPrivate(), keys.getPublic());
+        data = Fixtures.payload(100).getBytes("UTF-8");
+        signature = handler.sign(data, keys.getPrivate());
+
+        // The store is filled in memory, its key directory does not exist.
+        File noKeys = File.createTempFile("qrsav-keys", "");
+        noKeys.delete();
+        PublicKeyStore store = new PublicKeyStore(holder, noKeys, ".pub");
+        store.load();
+        for (int i = 1; i < 10; i++)
+            store.addKey(Integer.toString(i), Fixtures.keyPair(i).getPublic());
+        verifier = new ScanVerifier(holder, store);
+        content = session.signText(Fixtures.payload(100));
+
+        stack = new ArrayList<>(STACK_SIZE);
+        for (int i = 0; i < STACK_SIZE; i++) {
+            KeyPair signer = Fixtures.keyPair(1 + i % 3);
+            stack.add(new SigningSession(holder, signer.getPrivate(), signer.getPublic())
+                    .signText(Fixtures.payload(100)));
+        }
+    }
+
+    @Benchmark
+    public SignatureEntity sign() throws Exception {
+        return handler.sign(data, keys.getPrivate());
+    }
+
+    @Benchmark
+    public SignatureEntity signWithSession() throws Exception {
+        return session.sign(data);
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return handler.verify(signature, data, keys.getPublic());
+    }
+
+    @Benchmark
+    public ScanResult verifyScan() {
+        return verifier.verify(content);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STACK_SIZE)
+    public void verifyStack(Blackhole bh) {
+        for (String code : stack)
+            bh.consume(verifier.verify(code));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STACK_SIZE)
+    public List<ScanResult> verifyStackBatch() {
+        return verifier.verifyAll(stack);
+    }
+}
@@ -0,0 +1,85 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyFiles;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SigningSession;
+
+/**
+ * Latency of signing one message with the two key backends: reading and parsing the private key
+ * file per message compared to a session which holds the key handle and its initialized
+ * {@link Signature}, as the generator does with a key of the AndroidKeyStore. The key store itself
+ * only exists on a device; there the generator logs the latency of each signature per backend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigningKeyBenchmark {
+    private File keyFile;
+    private KeyFactory keyFactory;
+    private SigningSession session;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        SignatureSpecHolder holder = Fixtures.specHolder();
+        KeyPair keys = Fixtures.keyPair(1);
+        keyFactory = KeyFactory.getInstance(Fixtures.KEY_ALGORITHM, Fixtures.PROVIDER);
+        data = Fixtures.payload(100).getBytes("UTF-8");
+
+        keyFile = File.createTempFile("qrsav-key", ".priv");
+        FileOutputStream fos = new FileOutputStream(keyFile);
+        try {
+            fos.write(keys.getPrivate().getEncoded());
+        } finally {
+            fos.close();
+        }
+
+        session = new SigningSession(holder, Signature.getInstance(Fixtures.SIGN_ALGORITHM, Fixtures.PROVIDER),
+                keys.getPrivate(), keys.getPublic(), EnvelopeEncoding.BYTE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        keyFile.delete();
+    }
+
+    @Benchmark
+    public byte[] signReadingKeyFile() throws Exception {
+        PrivateKey privateKey = KeyFiles.readPrivateKey(keyFile, keyFactory);
+        Signature signature = Signature.getInstance(Fixtures.SIGN_ALGORITHM, Fixtures.PROVIDER);
+        signature.initSign(privateKey);
+        signature.update(data);
+
+        return signature.sign();
+    }
+
+    @Benchmark
+    public SignatureEntity signWithKeyHandle() throws Exception {
+        return session.sign(data);
+    }
+}
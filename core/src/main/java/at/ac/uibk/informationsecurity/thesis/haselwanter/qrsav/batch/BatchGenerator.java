@@ -0,0 +1,159 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.ImageFormat;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeEncoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeImageWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SigningSession;
+
+/**
+ * Signs and encodes many payloads in one run and writes an image for each QR code.
+ * <p>
+ * All payloads are signed with the private key of one {@link SigningSession}. Encoding and
+ * writing the images run in parallel on all available cores. Images are written as soon as they
+ * are encoded and the number of payloads in progress is bounded, hence arbitrarily long payload
+ * lists are processed with constant memory.
+ * </p>
+ * <p>
+ * The generator does not depend on Android, so it runs inside the app as well as on a build
+ * server (see {@link BatchGeneratorMain}).
+ * </p>
+ */
+public class BatchGenerator {
+    private final SigningSession session;
+    private final int threads;
+    private final ImageFormat format;
+    private final int scale;
+
+    /**
+     * @param session The signing session or null if the payloads are not signed.
+     * @param threads The number of encoding threads.
+     * @param format  The image format of the written images.
+     * @param scale   The number of pixels per module of the written raster images.
+     */
+    public BatchGenerator(SigningSession session, int threads, ImageFormat format, int scale) {
+        this.session = session;
+        this.threads = threads;
+        this.format = format;
+        this.scale = scale;
+    }
+
+    /**
+     * @param session The signing session or null if the payloads are not signed.
+     */
+    public BatchGenerator(SigningSession session) {
+        this(session, Runtime.getRuntime().availableProcessors(), ImageFormat.PNG,
+                QRCodeImageWriter.DEFAULT_SCALE);
+    }
+
+    /**
+     * Generates a QR code for each line of a payload file. Empty lines are skipped.
+     *
+     * @param payloadFile The UTF-8 encoded payload file.
+     * @param outDir      The directory to write the images to, e.g. the app's codes directory.
+     * @return The {@link BatchResult}.
+     */
+    public BatchResult generate(File payloadFile, File outDir) throws IOException, InterruptedException {
+        PayloadReader reader = new PayloadReader(new FileInputStream(payloadFile), false);
+
+        try {
+            return generate(reader, outDir);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Generates a QR code for each payload of the list.
+     *
+     * @param payloads The payloads.
+     * @param outDir   The directory to write the images to, e.g. the app's codes directory.
+     * @return The {@link BatchResult}.
+     */
+    public BatchResult generate(List<String> payloads, File outDir) throws IOException, InterruptedException {
+        return generate(payloads.iterator(), outDir);
+    }
+
+    /**
+     * Generates a QR code for each payload. The images are named after the payload's position.
+     *
+     * @param payloads The payloads.
+     * @param outDir   The directory to write the images to, e.g. the app's codes directory.
+     * @return The {@link BatchResult}.
+     */
+    public BatchResult generate(Iterator<String> payloads, final File outDir) throws IOException, InterruptedException {
+        if (!outDir.isDirectory() && !outDir.mkdirs())
+            throw new IOException("\'" + outDir.getAbsolutePath() + "\' is not a directory.");
+
+        final AtomicInteger generated = new AtomicInteger();
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        // Bound the number of payloads in progress.
+        final Semaphore inFlight = new Semaphore(threads * 4);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+
+        try {
+            int index = 0;
+            while (payloads.hasNext()) {
+                final String payload = payloads.next();
+                final int i = index++;
+
+                inFlight.acquire();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            writeCode(payload, new File(outDir, String.format("qrcode_%06d.%s", i, format.getExtension())));
+                            generated.incrementAndGet();
+                        } catch (WriterException | SignatureException | IOException | IllegalArgumentException e) {
+                            failures.add(i + ": " + e.getMessage());
+                        } catch (RuntimeException e) {
+                            // Otherwise the error is lost on the executor's thread.
+                            failures.add(i + ": " + e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        return new BatchResult(generated.get(), failures, System.nanoTime() - start);
+    }
+
+    private void writeCode(String payload, File file) throws WriterException, SignatureException, IOException {
+        String content = session == null ? payload : session.signText(payload);
+
+        // Encode at module resolution, the image is scaled while writing.
+        BitMatrix m = QRCodeEncoder.encode(content);
+
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            QRCodeImageWriter.write(m, format, scale, os);
+        } finally {
+            os.close();
+        }
+    }
+}
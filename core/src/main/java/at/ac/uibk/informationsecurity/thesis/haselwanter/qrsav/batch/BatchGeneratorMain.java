@@ -0,0 +1,59 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import java.io.File;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.ImageFormat;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.QRCodeImageWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyFiles;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SigningSession;
+
+/**
+ * Runs the {@link BatchGenerator} from the command line, e.g. on a build server.
+ * <p>
+ * Usage: <code>BatchGeneratorMain &lt;payload file&gt; &lt;output dir&gt; [&lt;private key file&gt;
+ * &lt;public key file&gt;]</code>
+ * </p>
+ * <p>
+ * The key files are the PKCS#8 and X.509 encoded files of the app's key directory. Without key
+ * files the payloads are not signed. The signature scheme and the security provider are set with
+ * system properties as described by {@link SpecProperties}. The image format is PNG unless set
+ * with <code>qrsav.format</code> to one of the {@link ImageFormat}s. The signature envelopes are written in byte mode unless
+ * <code>qrsav.envelope</code> is set to another {@link EnvelopeEncoding}. With
+ * <code>qrsav.compress=true</code> the messages are compressed before signing.
+ * </p>
+ */
+public class BatchGeneratorMain {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 && args.length != 4) {
+            System.err.println("Usage: BatchGeneratorMain <payload file> <output dir> "
+                    + "[<private key file> <public key file>]");
+            System.exit(1);
+        }
+
+        SigningSession session = null;
+        if (args.length == 4) {
+            SignatureSpecHolder holder = SpecProperties.configure();
+
+            KeyFactory keyFactory = KeyFactory.getInstance(holder.getAlgorithmForKeys(), holder.getProvider());
+            PrivateKey privateKey = KeyFiles.readPrivateKey(new File(args[2]), keyFactory);
+            PublicKey publicKey = KeyFiles.readPublicKey(new File(args[3]), keyFactory);
+            EnvelopeEncoding encoding = EnvelopeEncoding.valueOf(
+                    System.getProperty("qrsav.envelope", "BYTE").toUpperCase());
+            session = new SigningSession(holder, privateKey, publicKey, encoding);
+            session.setCompressed(Boolean.getBoolean("qrsav.compress"));
+        }
+
+        ImageFormat format = ImageFormat.valueOf(System.getProperty("qrsav.format", "PNG").toUpperCase());
+        BatchResult result = new BatchGenerator(session, Runtime.getRuntime().availableProcessors(),
+                format, QRCodeImageWriter.DEFAULT_SCALE).generate(new File(args[0]), new File(args[1]));
+        System.out.println(result);
+
+        for (String failure : result.getFailures())
+            System.err.println("Failed: " + failure);
+    }
+}
@@ -0,0 +1,51 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a batch run of the {@link BatchGenerator}.
+ */
+public final class BatchResult {
+    private final int generated;
+    private final List<String> failures;
+    private final long elapsedNanos;
+
+    BatchResult(int generated, List<String> failures, long elapsedNanos) {
+        this.generated = generated;
+        this.failures = Collections.unmodifiableList(failures);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of QR codes written.
+     */
+    public int getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Returns a message for each payload which could not be encoded.
+     */
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Returns the throughput of the batch run.
+     */
+    public double getCodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : generated * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d codes in %d ms (%.1f codes/s), %d failed", generated,
+                getElapsedMillis(), getCodesPerSecond(), failures.size());
+    }
+}
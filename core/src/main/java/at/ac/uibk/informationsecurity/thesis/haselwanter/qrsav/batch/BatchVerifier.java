@@ -0,0 +1,134 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanVerifier;
+
+/**
+ * Verifies many decoded QR code payloads in one run, e.g. payloads collected from field devices.
+ * <p>
+ * The payloads are verified in parallel on a fixed number of threads. All threads share the
+ * immutable key index of the verifier's {@link at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore},
+ * so looking up a key needs no locking. Each thread verifies a chunk of consecutive payloads with
+ * {@link ScanVerifier#verifyAll(List, long[])}, which sets up each signer's key once per chunk and
+ * measures the latency of each payload. The number of chunks in progress is bounded, hence
+ * arbitrarily long payload streams are processed with constant memory apart from the recorded
+ * latencies.
+ * </p>
+ * <p>
+ * The verifier does not depend on Android and runs on a plain Java VM (see
+ * {@link BatchVerifierMain}).
+ * </p>
+ */
+public class BatchVerifier {
+    /**
+     * Receives the result of each payload as soon as it is verified. The listener is called by the
+     * verifying threads, hence in any order and concurrently.
+     */
+    public interface Listener {
+        /**
+         * @param index        The payload's position within the stream.
+         * @param result       The {@link ScanResult}.
+         * @param latencyNanos The time spent verifying the payload (see
+         *                     {@link ScanVerifier#verifyAll(List, long[])}).
+         */
+        void onResult(int index, ScanResult result, long latencyNanos);
+    }
+
+    /**
+     * The number of payloads verified together.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    private final ScanVerifier verifier;
+    private final int threads;
+
+    /**
+     * @param verifier The verifier holding the public keys.
+     * @param threads  The number of verifying threads.
+     */
+    public BatchVerifier(ScanVerifier verifier, int threads) {
+        this.verifier = verifier;
+        this.threads = threads;
+    }
+
+    /**
+     * Verifies each line of a payload file. Empty lines are skipped.
+     *
+     * @param payloadFile The UTF-8 encoded payload file.
+     * @param urlEncoded  Whether the lines are URL encoded.
+     * @param listener    The listener for the results of the single payloads or null.
+     * @return The {@link VerificationReport}.
+     */
+    public VerificationReport verify(File payloadFile, boolean urlEncoded, Listener listener)
+            throws IOException, InterruptedException {
+        PayloadReader reader = new PayloadReader(new FileInputStream(payloadFile), urlEncoded);
+
+        try {
+            return verify(reader, listener);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Verifies each payload.
+     *
+     * @param payloads The decoded QR code contents.
+     * @param listener The listener for the results of the single payloads or null.
+     * @return The {@link VerificationReport}.
+     */
+    public VerificationReport verify(Iterator<String> payloads, final Listener listener) throws InterruptedException {
+        final VerificationReport.Builder report = new VerificationReport.Builder();
+        // Bound the number of chunks in progress.
+        final Semaphore inFlight = new Semaphore(threads * 4);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+
+        try {
+            int index = 0;
+            while (payloads.hasNext()) {
+                final List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+                while (chunk.size() < CHUNK_SIZE && payloads.hasNext())
+                    chunk.add(payloads.next());
+                final int first = index;
+                index += chunk.size();
+
+                inFlight.acquire();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long[] latencies = new long[chunk.size()];
+                            List<ScanResult> results = verifier.verifyAll(chunk, latencies);
+
+                            for (int i = 0; i < results.size(); i++) {
+                                ScanResult result = results.get(i);
+                                report.add(result.getStatus(), latencies[i]);
+                                if (listener != null)
+                                    listener.onResult(first + i, result, latencies[i]);
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        return report.build(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,94 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanVerifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.VerificationCache;
+
+/**
+ * Runs the {@link BatchVerifier} from the command line, e.g. on a server collecting the payloads
+ * scanned by field devices.
+ * <p>
+ * Usage: <code>BatchVerifierMain &lt;key dir&gt; [&lt;payload file&gt; | - | --http &lt;port&gt;]</code>
+ * </p>
+ * <p>
+ * The public keys are the X.509 encoded files of the key directory. The payloads are read from
+ * the payload file or from standard input, one payload per line, and a result line is written to
+ * standard output for each of them (see {@link ResultLines}). The summary with throughput and
+ * latency percentiles is written to standard error. With <code>--http</code> the payloads are
+ * posted to a local {@link VerificationHttpServer} instead.
+ * </p>
+ * <p>
+ * The signature scheme and the security provider are set with system properties as described by
+ * {@link SpecProperties}. Payloads and messages are URL
+ * encoded if <code>qrsav.input</code> is set to <code>url</code>. The number of verifying threads
+ * defaults to the number of cores and can be set with <code>qrsav.threads</code>. With
+ * <code>qrsav.cache</code> set to a number of entries, payloads which are posted again within a
+ * minute, e.g. by a turnstile, are answered from a {@link VerificationCache}.
+ * </p>
+ */
+public class BatchVerifierMain {
+    private static final long CACHE_TTL_MILLIS = 60 * 1000;
+
+    public static void main(String[] args) throws Exception {
+        boolean http = args.length >= 2 && "--http".equals(args[1]);
+        if (args.length < 1 || args.length > 3 || (args.length == 3) != http) {
+            System.err.println("Usage: BatchVerifierMain <key dir> [<payload file> | - | --http <port>]");
+            System.exit(1);
+        }
+
+        SignatureSpecHolder holder = SpecProperties.configure();
+
+        PublicKeyStore store = new PublicKeyStore(holder, new File(args[0]),
+                "-" + holder.getAlgorithmForKeys().toLowerCase() + ".pub");
+        // Parse all keys up front, the verifying threads share the immutable key index.
+        store.load();
+
+        int threads = Integer.getInteger("qrsav.threads", Runtime.getRuntime().availableProcessors());
+        int cacheSize = Integer.getInteger("qrsav.cache", 0);
+        VerificationCache cache = cacheSize > 0 ? new VerificationCache(cacheSize, CACHE_TTL_MILLIS) : null;
+        BatchVerifier verifier = new BatchVerifier(new ScanVerifier(holder, store, cache), threads);
+
+        if (http) {
+            VerificationHttpServer server = new VerificationHttpServer(verifier, Integer.parseInt(args[2]));
+            server.start();
+            System.err.println(store.getPublicKeys().size() + " public keys, listening on http://localhost:"
+                    + server.getPort() + "/verify");
+            return;
+        }
+
+        final boolean urlEncoded = "url".equals(System.getProperty("qrsav.input"));
+        final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8")));
+        BatchVerifier.Listener listener = new BatchVerifier.Listener() {
+            @Override
+            public void onResult(int index, ScanResult result, long latencyNanos) {
+                String line = ResultLines.format(index, result, latencyNanos, urlEncoded);
+
+                synchronized (out) {
+                    out.println(line);
+                }
+            }
+        };
+
+        VerificationReport report;
+        if (args.length == 1 || "-".equals(args[1])) {
+            PayloadReader reader = new PayloadReader(System.in, urlEncoded);
+            try {
+                report = verifier.verify(reader, listener);
+            } finally {
+                reader.close();
+            }
+        } else {
+            report = verifier.verify(new File(args[1]), urlEncoded, listener);
+        }
+
+        out.flush();
+        System.err.println(report);
+    }
+}
@@ -0,0 +1,76 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads payloads from a UTF-8 encoded stream, one payload per line. Empty lines are skipped.
+ * <p>
+ * Decoded QR code contents may contain line breaks, e.g. within a signature. Such payloads are
+ * passed URL encoded (see {@link java.net.URLEncoder}) and read with <code>urlEncoded</code> set.
+ * </p>
+ */
+class PayloadReader implements Iterator<String>, Closeable {
+    private final BufferedReader reader;
+    private final boolean urlEncoded;
+    private String next;
+    private boolean fetched;
+
+    /**
+     * @param is         The stream to read the payloads from.
+     * @param urlEncoded Whether the lines are URL encoded.
+     */
+    PayloadReader(InputStream is, boolean urlEncoded) throws IOException {
+        reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        this.urlEncoded = urlEncoded;
+    }
+
+    @Override
+    public boolean hasNext() {
+        // Read ahead lazily, so malformed lines are reported while iterating.
+        if (!fetched) {
+            next = readNext();
+            fetched = true;
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        fetched = false;
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String readNext() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (line.length() > 0)
+                    return urlEncoded ? URLDecoder.decode(line, "UTF-8") : line;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+
+/**
+ * Formats the result of a verified payload as one tab separated line: the payload's position,
+ * the {@link ScanResult.Status}, the signer's key identifier, the latency in microseconds and the
+ * message.
+ */
+final class ResultLines {
+    private ResultLines() {
+    }
+
+    /**
+     * @param urlEncoded Whether the message is URL encoded, otherwise tabs and line breaks are
+     *                   replaced by spaces.
+     */
+    static String format(int index, ScanResult result, long latencyNanos, boolean urlEncoded) {
+        String content = result.getContent();
+
+        try {
+            content = urlEncoded ? URLEncoder.encode(content, "UTF-8") : content.replaceAll("[\\t\\r\\n]", " ");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is supported by every Java platform.
+            throw new IllegalStateException(e);
+        }
+
+        return index + "\t" + result.getStatus() + "\t" + (result.getKeyId() == null ? "-" : result.getKeyId())
+                + "\t" + TimeUnit.NANOSECONDS.toMicros(latencyNanos) + "\t" + content;
+    }
+}
@@ -0,0 +1,32 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SignatureScheme;
+
+/**
+ * Reads the signature specifications of the command line tools from system properties.
+ * <p>
+ * <code>qrsav.scheme</code> selects a {@link SignatureScheme}. Otherwise the algorithms default to
+ * the app's ECDSA specifications and can be changed with <code>qrsav.keyAlgorithm</code> and
+ * <code>qrsav.signAlgorithm</code>. The security provider is SunEC unless set with
+ * <code>qrsav.provider</code>.
+ * </p>
+ */
+final class SpecProperties {
+    private SpecProperties() {
+    }
+
+    static SignatureSpecHolder configure() {
+        SignatureSpecHolder holder = SignatureSpecHolder.getInstance();
+        String provider = System.getProperty("qrsav.provider", "SunEC");
+        String scheme = System.getProperty("qrsav.scheme");
+
+        if (scheme != null)
+            return SignatureScheme.valueOf(scheme.toUpperCase()).configure(holder, provider);
+
+        holder.setSpecs(System.getProperty("qrsav.keyAlgorithm", "EC"),
+                System.getProperty("qrsav.signAlgorithm", "SHA256withECDSA"), provider);
+
+        return holder;
+    }
+}
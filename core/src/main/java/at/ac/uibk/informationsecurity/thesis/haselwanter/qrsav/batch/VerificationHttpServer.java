@@ -0,0 +1,117 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+
+/**
+ * A local HTTP endpoint for the {@link BatchVerifier}. The server only listens on the loopback
+ * interface, so it is meant to run behind the service which collects the payloads.
+ * <p>
+ * <code>POST /verify</code> takes the payloads as UTF-8 text with one payload per line and
+ * answers with one result line per payload (see {@link ResultLines}) in the order of the payloads,
+ * followed by a summary line starting with <code>#</code>. With the query <code>?encoding=url</code>
+ * the payloads and messages are URL encoded.
+ * </p>
+ * <p>
+ * The server uses the HTTP server of the Java SE platform, hence it is not available on Android.
+ * </p>
+ */
+public class VerificationHttpServer {
+    private final BatchVerifier verifier;
+    private final HttpServer server;
+
+    /**
+     * @param verifier The batch verifier.
+     * @param port     The port to listen on or 0 for any free port.
+     */
+    public VerificationHttpServer(BatchVerifier verifier, int port) throws IOException {
+        this.verifier = verifier;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+        server.createContext("/verify", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleVerify(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleVerify(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        String query = exchange.getRequestURI().getQuery();
+        final boolean urlEncoded = query != null && query.contains("encoding=url");
+        // Results arrive in any order, but are answered in the order of the payloads.
+        final Map<Integer, String> lines = new TreeMap<>();
+        VerificationReport report;
+
+        PayloadReader reader = new PayloadReader(exchange.getRequestBody(), urlEncoded);
+        try {
+            report = verifier.verify(reader, new BatchVerifier.Listener() {
+                @Override
+                public void onResult(int index, ScanResult result, long latencyNanos) {
+                    String line = ResultLines.format(index, result, latencyNanos, urlEncoded);
+
+                    synchronized (lines) {
+                        lines.put(index, line);
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        } catch (IllegalArgumentException e) {
+            // Malformed URL encoding.
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        } finally {
+            reader.close();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines.values())
+            sb.append(line).append('\n');
+        sb.append("# ").append(report).append('\n');
+
+        byte[] body = sb.toString().getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+
+        OutputStream os = exchange.getResponseBody();
+        try {
+            os.write(body);
+        } finally {
+            os.close();
+        }
+    }
+}
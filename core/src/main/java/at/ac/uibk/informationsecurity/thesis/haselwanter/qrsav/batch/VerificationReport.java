@@ -0,0 +1,102 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification.ScanResult;
+
+/**
+ * The outcome of a batch run of the {@link BatchVerifier}: the number of payloads per
+ * {@link ScanResult.Status}, the throughput and the latency percentiles.
+ */
+public final class VerificationReport {
+    private final Map<ScanResult.Status, Integer> counts;
+    private final long[] latencies;
+    private final long elapsedNanos;
+
+    private VerificationReport(Map<ScanResult.Status, Integer> counts, long[] latencies, long elapsedNanos) {
+        this.counts = counts;
+        this.latencies = latencies;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of verified payloads.
+     */
+    public int getVerified() {
+        return latencies.length;
+    }
+
+    /**
+     * Returns the number of payloads with the given outcome.
+     */
+    public int getCount(ScanResult.Status status) {
+        Integer count = counts.get(status);
+
+        return count == null ? 0 : count;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Returns the throughput of the batch run.
+     */
+    public double getPayloadsPerSecond() {
+        return elapsedNanos == 0 ? 0 : latencies.length * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Returns the latency of verifying a single payload which is not exceeded by the given
+     * percentage of all payloads.
+     *
+     * @param percentile The percentage between 0 and 100, e.g. 99 for the 99th percentile.
+     * @return The latency in microseconds or 0 if no payload was verified.
+     */
+    public long getLatencyMicros(double percentile) {
+        if (latencies.length == 0)
+            return 0;
+
+        // Nearest-rank method on the sorted latencies.
+        int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+
+        return TimeUnit.NANOSECONDS.toMicros(latencies[Math.max(0, Math.min(rank, latencies.length) - 1)]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d payloads in %d ms (%.1f payloads/s), %d valid, %d invalid, %d unsigned, "
+                        + "latency p50 %d us, p90 %d us, p99 %d us, max %d us", getVerified(),
+                getElapsedMillis(), getPayloadsPerSecond(), getCount(ScanResult.Status.VALID),
+                getCount(ScanResult.Status.INVALID), getCount(ScanResult.Status.NO_SIGNATURE),
+                getLatencyMicros(50), getLatencyMicros(90), getLatencyMicros(99), getLatencyMicros(100));
+    }
+
+    /**
+     * Collects the results of the verifying threads.
+     */
+    static final class Builder {
+        private final Map<ScanResult.Status, Integer> counts = new EnumMap<>(ScanResult.Status.class);
+        private long[] latencies = new long[1024];
+        private int size;
+
+        synchronized void add(ScanResult.Status status, long latencyNanos) {
+            Integer count = counts.get(status);
+            counts.put(status, count == null ? 1 : count + 1);
+
+            if (size == latencies.length)
+                latencies = Arrays.copyOf(latencies, size * 2);
+            latencies[size++] = latencyNanos;
+        }
+
+        synchronized VerificationReport build(long elapsedNanos) {
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+
+            return new VerificationReport(new EnumMap<>(counts), sorted, elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding;
+
+/**
+ * The immutable content and location of one QR code found in a frame.
+ */
+public final class DecodedCode {
+    private final String content;
+    private final float[] points;
+
+    /**
+     * @param content The decoded content.
+     * @param points  The x and y coordinates of the code's finder and alignment patterns within
+     *                the frame, i.e. x0, y0, x1, y1 and so on.
+     */
+    public DecodedCode(String content, float[] points) {
+        this.content = content;
+        this.points = points.clone();
+    }
+
+    /**
+     * Returns the decoded content. Binary content is returned as ISO-8859-1 String with one
+     * character per byte (see {@link QRCodeDecoder#decode(com.google.zxing.LuminanceSource)}).
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Returns the x and y coordinates of the code's finder and alignment patterns within the
+     * frame, i.e. x0, y0, x1, y1 and so on.
+     */
+    public float[] getPoints() {
+        return points.clone();
+    }
+}
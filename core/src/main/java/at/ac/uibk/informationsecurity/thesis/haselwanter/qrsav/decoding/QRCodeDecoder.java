@@ -0,0 +1,292 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.FormatException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Decodes QR codes from luminance data, e.g. the Y plane of camera preview frames, by using
+ * ZXing's {@link QRCodeReader}. All codes of a frame, e.g. a photo of a pallet with many labels,
+ * are decoded at once by ZXing's {@link QRCodeMultiReader}.
+ * <p>
+ * Frames are searched within a {@link ScanWindow} only, e.g. the area of an on-screen
+ * viewfinder, so the binarizer does not run over the background around it. With a downscale
+ * factor a single code is first searched in a downscaled copy of the window, which costs a
+ * fraction of a full resolution pass. The full resolution is tried only if this fails, e.g.
+ * because the code is small or dense.
+ * </p>
+ * <p>
+ * The window is copied into a buffer, which is reused for the following frames, since ZXing would
+ * copy it into a new array on every attempt otherwise. Hence decoding the luminance data allocates
+ * no frame-sized arrays apart from the binarizer's bit matrix.
+ * </p>
+ * <p>
+ * A decoder is not thread-safe and has to be used by one thread only.
+ * </p>
+ */
+public class QRCodeDecoder {
+    private static final Logger LOG = Logger.getLogger(QRCodeDecoder.class.getName());
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    /**
+     * The lowest first byte of binary content, i.e. of envelopes (0xFF), their parts (0xFE) and
+     * the packets of streamed envelopes (0xFD). These bytes never occur in UTF-8 text.
+     */
+    private static final int BINARY_MAGIC = 0xFD;
+    /**
+     * The minimum width and height of a downscaled window. Codes in smaller windows would have
+     * less than about two pixels per module.
+     */
+    private static final int MIN_DOWNSCALED_SIZE = 160;
+
+    private final QRCodeReader reader;
+    private final QRCodeMultiReader multiReader;
+    private final Map<DecodeHintType, Object> hints;
+    private ScanWindow window;
+    private int downscaleFactor;
+    /**
+     * The reused buffers of the cropped and the downscaled window.
+     */
+    private byte[] cropped, downscaled;
+    /**
+     * The reused sums of a row of blocks while downscaling.
+     */
+    private int[] sums;
+
+    public QRCodeDecoder() {
+        window = ScanWindow.FULL;
+        downscaleFactor = 1;
+        reader = new QRCodeReader();
+        multiReader = new QRCodeMultiReader();
+        // Character decoding using UTF-8.
+        hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.CHARACTER_SET, "UTF-8");
+    }
+
+    /**
+     * Sets the part of the frames which is searched for QR codes. The whole frame by default.
+     */
+    public void setScanWindow(ScanWindow window) {
+        this.window = window;
+    }
+
+    /**
+     * Sets the factor by which the scan window is downscaled in the first attempt to decode a
+     * single code, e.g. 2 for a quarter of the pixels. A factor of 1, the default, decodes the
+     * full resolution only.
+     */
+    public void setDownscaleFactor(int downscaleFactor) {
+        if (downscaleFactor < 1)
+            throw new IllegalArgumentException("Downscale factor < 1: " + downscaleFactor);
+
+        this.downscaleFactor = downscaleFactor;
+    }
+
+    /**
+     * Decodes the scan window of the given luminance data by using it as input for ZXing's
+     * {@link QRCodeReader}, first downscaled and then at full resolution.
+     *
+     * @param data   The luminance data, e.g. the Y plane of a NV21 preview frame.
+     * @param width  The frame's width.
+     * @param height The frame's height.
+     * @return The decoded QR code content or null if no code was found.
+     */
+    public String decode(byte[] data, int width, int height) {
+        int left = window.getLeft(width), top = window.getTop(height);
+        int w = window.getWidth(width), h = window.getHeight(height);
+        int f = downscaleFactor;
+
+        if (f > 1 && w / f >= MIN_DOWNSCALED_SIZE && h / f >= MIN_DOWNSCALED_SIZE) {
+            byte[] scaled = downscale(data, width, left, top, w, h, f);
+            String text = decode(new PlanarYUVLuminanceSource(scaled, w / f, h / f, 0, 0, w / f, h / f, false));
+
+            if (text != null)
+                return text;
+        }
+
+        return decode(new PlanarYUVLuminanceSource(crop(data, width, height, left, top, w, h), w, h, 0, 0, w, h, false));
+    }
+
+    /**
+     * Decodes the QR code of any {@link LuminanceSource}, e.g. the pixels of an image file.
+     *
+     * @param src The luminance source.
+     * @return The decoded QR code content or null if no code was found. Binary content, e.g. a
+     * signature envelope, is returned as ISO-8859-1 String with one character per byte.
+     */
+    public String decode(LuminanceSource src) {
+        BinaryBitmap bbmp = new BinaryBitmap(new HybridBinarizer(src));
+
+        Result r = null;
+        try {
+            r = reader.decode(bbmp, hints);
+        } catch (NotFoundException e) {
+            // No code in this frame, which is the common case while scanning.
+        } catch (ChecksumException e) {
+            LOG.fine("Checksum feature failed");
+        } catch (FormatException e) {
+            LOG.fine("Wrong format");
+        } finally {
+            reader.reset();
+        }
+
+        return r == null ? null : getContent(r);
+    }
+
+    /**
+     * Decodes all QR codes of the given luminance data.
+     *
+     * @param data   The luminance data, e.g. the Y plane of a NV21 preview frame.
+     * @param width  The frame's width.
+     * @param height The frame's height.
+     * @return The decoded QR codes, which is empty if no code was found.
+     */
+    public List<DecodedCode> decodeAll(byte[] data, int width, int height) {
+        int left = window.getLeft(width), top = window.getTop(height);
+        int w = window.getWidth(width), h = window.getHeight(height);
+        LuminanceSource src = new PlanarYUVLuminanceSource(crop(data, width, height, left, top, w, h), w, h,
+                0, 0, w, h, false);
+        List<DecodedCode> codes = decodeAll(src);
+
+        if (left == 0 && top == 0)
+            return codes;
+
+        // Map the points from the window to the frame.
+        List<DecodedCode> inFrame = new ArrayList<>(codes.size());
+        for (DecodedCode code : codes) {
+            float[] points = code.getPoints();
+            for (int i = 0; i < points.length; i += 2) {
+                points[i] += left;
+                points[i + 1] += top;
+            }
+            inFrame.add(new DecodedCode(code.getContent(), points));
+        }
+
+        return inFrame;
+    }
+
+    /**
+     * Decodes all QR codes of any {@link LuminanceSource}. Codes which are found but cannot be
+     * decoded, e.g. because they are blurred, are left out.
+     *
+     * @param src The luminance source.
+     * @return The decoded QR codes, which is empty if no code was found.
+     */
+    public List<DecodedCode> decodeAll(LuminanceSource src) {
+        BinaryBitmap bbmp = new BinaryBitmap(new HybridBinarizer(src));
+
+        Result[] results;
+        try {
+            results = multiReader.decodeMultiple(bbmp, hints);
+        } catch (NotFoundException e) {
+            // No code in this frame, which is the common case while scanning.
+            return Collections.emptyList();
+        } finally {
+            multiReader.reset();
+        }
+
+        List<DecodedCode> codes = new ArrayList<>(results.length);
+        for (Result r : results) {
+            ResultPoint[] rp = r.getResultPoints();
+            float[] points = new float[rp == null ? 0 : rp.length * 2];
+
+            for (int i = 0; i < points.length / 2; i++) {
+                points[2 * i] = rp[i].getX();
+                points[2 * i + 1] = rp[i].getY();
+            }
+
+            codes.add(new DecodedCode(getContent(r), points));
+        }
+
+        return codes;
+    }
+
+    /**
+     * Copies a window into the reused buffer, so that ZXing uses it as is.
+     *
+     * @return The frame itself if the window covers it completely; the reused buffer otherwise.
+     */
+    private byte[] crop(byte[] data, int dataWidth, int dataHeight, int left, int top, int width, int height) {
+        if (width == dataWidth && height == dataHeight)
+            return data;
+
+        if (cropped == null || cropped.length < width * height)
+            cropped = new byte[width * height];
+
+        for (int y = 0; y < height; y++)
+            System.arraycopy(data, (top + y) * dataWidth + left, cropped, y * width, width);
+
+        return cropped;
+    }
+
+    /**
+     * Averages each square of factor x factor pixels of a window into one pixel.
+     *
+     * @return The reused buffer holding the downscaled window.
+     */
+    private byte[] downscale(byte[] data, int dataWidth, int left, int top, int width, int height, int factor) {
+        int w = width / factor, h = height / factor;
+        int area = factor * factor;
+
+        if (downscaled == null || downscaled.length < w * h)
+            downscaled = new byte[w * h];
+
+        if (sums == null || sums.length < w)
+            sums = new int[w];
+
+        for (int y = 0; y < h; y++) {
+            Arrays.fill(sums, 0, w, 0);
+
+            for (int dy = 0; dy < factor; dy++) {
+                int offset = (top + y * factor + dy) * dataWidth + left;
+                for (int x = 0; x < w; x++)
+                    for (int dx = 0; dx < factor; dx++)
+                        sums[x] += data[offset++] & 0xFF;
+            }
+
+            for (int x = 0; x < w; x++)
+                downscaled[y * w + x] = (byte) (sums[x] / area);
+        }
+
+        return downscaled;
+    }
+
+    /**
+     * Returns the text of a decoded QR code or its raw bytes if it holds binary content. ZXing
+     * guesses the character set of byte mode segments, which would garble binary content.
+     */
+    @SuppressWarnings("unchecked")
+    static String getContent(Result r) {
+        List<byte[]> segments = r.getResultMetadata() == null ? null
+                : (List<byte[]>) r.getResultMetadata().get(ResultMetadataType.BYTE_SEGMENTS);
+
+        if (segments == null || segments.isEmpty() || segments.get(0).length == 0
+                || (segments.get(0)[0] & 0xFF) < BINARY_MAGIC)
+            return r.getText();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] segment : segments)
+            bytes.write(segment, 0, segment.length);
+
+        return new String(bytes.toByteArray(), ISO_8859_1);
+    }
+}
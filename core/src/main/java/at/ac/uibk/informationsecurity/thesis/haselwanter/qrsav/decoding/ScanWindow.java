@@ -0,0 +1,68 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.decoding;
+
+/**
+ * The part of a frame which is searched for QR codes, e.g. the area of an on-screen viewfinder.
+ * The window is given as fractions of the frame's size, hence it fits any frame resolution.
+ */
+public final class ScanWindow {
+    /**
+     * The whole frame.
+     */
+    public static final ScanWindow FULL = new ScanWindow(0, 0, 1, 1);
+
+    private final float left, top, width, height;
+
+    /**
+     * @param left   The window's left edge as fraction of the frame's width.
+     * @param top    The window's top edge as fraction of the frame's height.
+     * @param width  The window's width as fraction of the frame's width.
+     * @param height The window's height as fraction of the frame's height.
+     */
+    public ScanWindow(float left, float top, float width, float height) {
+        if (left < 0 || top < 0 || width <= 0 || height <= 0 || left + width > 1 || top + height > 1)
+            throw new IllegalArgumentException("Window exceeds the frame");
+
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Creates a window in the centre of the frame.
+     *
+     * @param fraction The window's width and height as fraction of the frame's width and height.
+     * @return The new {@link ScanWindow}.
+     */
+    public static ScanWindow centered(float fraction) {
+        return new ScanWindow((1 - fraction) / 2, (1 - fraction) / 2, fraction, fraction);
+    }
+
+    /**
+     * Returns the window's left edge in a frame of the given width.
+     */
+    public int getLeft(int frameWidth) {
+        return (int) (left * frameWidth);
+    }
+
+    /**
+     * Returns the window's top edge in a frame of the given height.
+     */
+    public int getTop(int frameHeight) {
+        return (int) (top * frameHeight);
+    }
+
+    /**
+     * Returns the window's width in a frame of the given width.
+     */
+    public int getWidth(int frameWidth) {
+        return Math.max(1, Math.min((int) (width * frameWidth), frameWidth - getLeft(frameWidth)));
+    }
+
+    /**
+     * Returns the window's height in a frame of the given height.
+     */
+    public int getHeight(int frameHeight) {
+        return Math.max(1, Math.min((int) (height * frameHeight), frameHeight - getTop(frameHeight)));
+    }
+}
@@ -0,0 +1,85 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+/**
+ * Base45 encoding as specified by RFC 9285. Its alphabet is exactly the character set of the QR
+ * code's alphanumeric mode, hence binary data is encoded as text which survives copying,
+ * sharing and any character set guessing of a QR code reader.
+ * <p>
+ * Two bytes are encoded in three characters. In alphanumeric mode these take 16.5 bits instead of
+ * 16 bits in byte mode, so Base45 trades about 3% capacity for a plain text content.
+ * </p>
+ */
+public final class Base45 {
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+    private static final int[] VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++)
+            VALUES[i] = -1;
+        for (int i = 0; i < ALPHABET.length(); i++)
+            VALUES[ALPHABET.charAt(i)] = i;
+    }
+
+    private Base45() {
+    }
+
+    public static String encode(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 1) / 2 * 3);
+
+        for (int i = 0; i + 1 < data.length; i += 2) {
+            int n = (data[i] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+            sb.append(ALPHABET.charAt(n % 45)).append(ALPHABET.charAt(n / 45 % 45))
+                    .append(ALPHABET.charAt(n / 2025));
+        }
+
+        // The last odd byte is encoded in two characters.
+        if (data.length % 2 == 1) {
+            int n = data[data.length - 1] & 0xFF;
+            sb.append(ALPHABET.charAt(n % 45)).append(ALPHABET.charAt(n / 45));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @param text The Base45 encoded text.
+     * @return The decoded data.
+     * @throws IllegalArgumentException If the text is not valid Base45.
+     */
+    public static byte[] decode(CharSequence text) {
+        int length = text.length();
+
+        if (length % 3 == 1)
+            throw new IllegalArgumentException("Invalid Base45 length " + length);
+
+        byte[] data = new byte[length / 3 * 2 + (length % 3 == 2 ? 1 : 0)];
+        int j = 0;
+
+        for (int i = 0; i < length; i += 3) {
+            int n = value(text, i) + value(text, i + 1) * 45;
+
+            if (i + 2 < length) {
+                n += value(text, i + 2) * 2025;
+                if (n > 0xFFFF)
+                    throw new IllegalArgumentException("Invalid Base45 triple at " + i);
+                data[j++] = (byte) (n >> 8);
+            } else if (n > 0xFF) {
+                throw new IllegalArgumentException("Invalid Base45 pair at " + i);
+            }
+
+            data[j++] = (byte) n;
+        }
+
+        return data;
+    }
+
+    private static int value(CharSequence text, int i) {
+        char c = text.charAt(i);
+        int v = c < VALUES.length ? VALUES[c] : -1;
+
+        if (v < 0)
+            throw new IllegalArgumentException("Invalid Base45 character \'" + c + "\'");
+
+        return v;
+    }
+}
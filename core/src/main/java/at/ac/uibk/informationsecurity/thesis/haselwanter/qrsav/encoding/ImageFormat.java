@@ -0,0 +1,39 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+/**
+ * The image formats QR codes can be written in by the {@link QRCodeImageWriter}. All formats are
+ * lossless and their size depends on the number of modules, not on the screen size.
+ */
+public enum ImageFormat {
+    /**
+     * Black and white PNG image with one bit per pixel.
+     */
+    PNG("png", "image/png"),
+    /**
+     * Binary portable bitmap (P4) with one bit per module and no compression.
+     */
+    PBM("pbm", "image/x-portable-bitmap"),
+    /**
+     * Scalable vector graphic with one path for all black modules.
+     */
+    SVG("svg", "image/svg+xml");
+
+    private final String extension;
+    private final String mimeType;
+
+    ImageFormat(String extension, String mimeType) {
+        this.extension = extension;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * Returns the file name extension without dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+}
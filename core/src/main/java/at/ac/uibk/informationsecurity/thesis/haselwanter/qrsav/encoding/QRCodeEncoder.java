@@ -0,0 +1,124 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopePart;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.FountainPacket;
+
+/**
+ * Encodes Strings to QR codes with one bit per module by using ZXing's {@link QRCodeWriter}.
+ * Scaling the code up is left to the image writer or the view showing it.
+ */
+public final class QRCodeEncoder {
+    private static final Map<EncodeHintType, Object> HINTS = hints("UTF-8");
+    /**
+     * Hints for binary envelopes, which are written in byte mode with one byte per character.
+     */
+    private static final Map<EncodeHintType, Object> BINARY_HINTS = hints("ISO-8859-1");
+
+    private QRCodeEncoder() {
+    }
+
+    /**
+     * Encodes the given String to a QR code.
+     *
+     * @param text The String to encode.
+     * @return The QR code's matrix with one bit per module.
+     * @throws WriterException If the String cannot be encoded, e.g. because it is too big.
+     */
+    public static BitMatrix encode(String text) throws WriterException {
+        Map<EncodeHintType, Object> hints = isBinary(text) ? BINARY_HINTS : HINTS;
+
+        // QRCodeWriter keeps no state, hence a new one per call costs nothing and is thread-safe.
+        return new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+    }
+
+    /**
+     * Encodes the given String to a QR code with the given error correction level and quiet zone,
+     * e.g. as chosen by the {@link SymbolOptimizer}.
+     *
+     * @param text   The String to encode.
+     * @param level  The error correction level.
+     * @param margin The width of the quiet zone in modules.
+     * @return The QR code's matrix with one bit per module.
+     * @throws WriterException If the String cannot be encoded, e.g. because it is too big.
+     */
+    public static BitMatrix encode(String text, ErrorCorrectionLevel level, int margin) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, getCharacterSet(text));
+        hints.put(EncodeHintType.ERROR_CORRECTION, level);
+        hints.put(EncodeHintType.MARGIN, margin);
+
+        return new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+    }
+
+    /**
+     * Puts several QR codes side by side into one matrix, e.g. the parts of a document split
+     * across several codes, so they are shown, stored and printed together. The codes are laid
+     * out row by row in a square grid, each in a cell as large as the largest code.
+     *
+     * @param matrices The codes' matrices including their quiet zones.
+     * @return The combined matrix.
+     */
+    public static BitMatrix tile(List<BitMatrix> matrices) {
+        int columns = getColumns(matrices.size());
+        int rows = (matrices.size() + columns - 1) / columns;
+        int cell = 0;
+
+        for (BitMatrix m : matrices)
+            cell = Math.max(cell, Math.max(m.getWidth(), m.getHeight()));
+
+        BitMatrix tiled = new BitMatrix(columns * cell, rows * cell);
+
+        for (int i = 0; i < matrices.size(); i++) {
+            BitMatrix m = matrices.get(i);
+            int left = i % columns * cell, top = i / columns * cell;
+
+            for (int y = 0; y < m.getHeight(); y++)
+                for (int x = 0; x < m.getWidth(); x++)
+                    if (m.get(x, y))
+                        tiled.set(left + x, top + y);
+        }
+
+        return tiled;
+    }
+
+    /**
+     * Returns the number of columns of the grid {@link #tile(List)} lays the given number of codes
+     * out in.
+     */
+    public static int getColumns(int codes) {
+        return (int) Math.ceil(Math.sqrt(codes));
+    }
+
+    /**
+     * Returns the character set the String is encoded with, i.e. ISO-8859-1 for binary envelopes
+     * and their parts and packets and UTF-8 otherwise.
+     */
+    static String getCharacterSet(String text) {
+        return isBinary(text) ? "ISO-8859-1" : "UTF-8";
+    }
+
+    private static boolean isBinary(String text) {
+        return EnvelopeEncoding.isByteContent(text) || EnvelopePart.isByteContent(text)
+                || FountainPacket.isByteContent(text);
+    }
+
+    private static Map<EncodeHintType, Object> hints(String characterSet) {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, characterSet);
+
+        return Collections.unmodifiableMap(hints);
+    }
+}
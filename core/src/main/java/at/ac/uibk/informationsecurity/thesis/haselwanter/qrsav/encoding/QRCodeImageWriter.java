@@ -0,0 +1,172 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes QR codes as images without any platform specific image classes, so it works on Android
+ * as well as on a plain Java VM. The images are written from the QR code's matrix, hence their
+ * size only depends on the number of modules.
+ */
+public final class QRCodeImageWriter {
+    /**
+     * Default number of pixels per module of raster images.
+     */
+    public static final int DEFAULT_SCALE = 4;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private QRCodeImageWriter() {
+    }
+
+    /**
+     * Writes a QR code in the given image format.
+     *
+     * @param m      The QR code's matrix, where set bits are black modules.
+     * @param format The image format.
+     * @param scale  The number of pixels per module. Ignored by vector and packed formats.
+     * @param os     The stream to write the image to.
+     */
+    public static void write(BitMatrix m, ImageFormat format, int scale, OutputStream os) throws IOException {
+        switch (format) {
+            case PBM:
+                writePbm(m, os);
+                break;
+            case SVG:
+                writeSvg(m, os);
+                break;
+            default:
+                writePng(m, scale, os);
+                break;
+        }
+    }
+
+    /**
+     * Writes a QR code as black and white PNG image with one bit per pixel.
+     *
+     * @param m     The QR code's matrix, where set bits are black modules.
+     * @param scale The number of pixels per module.
+     * @param os    The stream to write the image to.
+     */
+    public static void writePng(BitMatrix m, int scale, OutputStream os) throws IOException {
+        int width = m.getWidth() * scale;
+        int height = m.getHeight() * scale;
+        int rowLength = (width + 7) / 8;
+
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        DeflaterOutputStream dos = new DeflaterOutputStream(idat, new Deflater(Deflater.BEST_COMPRESSION));
+        byte[] row = new byte[rowLength + 1];
+
+        for (int y = 0; y < m.getHeight(); y++) {
+            // Filter type none, followed by the packed pixels where 1 is white.
+            Arrays.fill(row, (byte) 0);
+            for (int x = 0; x < width; x++)
+                if (!m.get(x / scale, y))
+                    row[1 + (x >> 3)] |= 0x80 >>> (x & 7);
+
+            for (int i = 0; i < scale; i++)
+                dos.write(row);
+        }
+        dos.finish();
+
+        DataOutputStream out = new DataOutputStream(os);
+        out.write(PNG_SIGNATURE);
+
+        // Image header: width, height, bit depth 1, grayscale, default compression, filter and
+        // no interlacing.
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(ihdr);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.write(new byte[]{1, 0, 0, 0, 0});
+
+        writeChunk(out, "IHDR", ihdr.toByteArray());
+        writeChunk(out, "IDAT", idat.toByteArray());
+        writeChunk(out, "IEND", new byte[0]);
+        out.flush();
+    }
+
+    /**
+     * Writes a QR code as binary portable bitmap (P4) with exactly one bit per module.
+     *
+     * @param m  The QR code's matrix, where set bits are black modules.
+     * @param os The stream to write the image to.
+     */
+    public static void writePbm(BitMatrix m, OutputStream os) throws IOException {
+        int width = m.getWidth();
+        byte[] row = new byte[(width + 7) / 8];
+
+        os.write(("P4\n" + width + " " + m.getHeight() + "\n").getBytes("US-ASCII"));
+
+        for (int y = 0; y < m.getHeight(); y++) {
+            // Packed pixels where 1 is black.
+            Arrays.fill(row, (byte) 0);
+            for (int x = 0; x < width; x++)
+                if (m.get(x, y))
+                    row[x >> 3] |= 0x80 >>> (x & 7);
+
+            os.write(row);
+        }
+        os.flush();
+    }
+
+    /**
+     * Writes a QR code as scalable vector graphic. Each horizontal run of black modules becomes
+     * one rectangle of a single path and one user unit equals one module.
+     *
+     * @param m  The QR code's matrix, where set bits are black modules.
+     * @param os The stream to write the image to.
+     */
+    public static void writeSvg(BitMatrix m, OutputStream os) throws IOException {
+        int width = m.getWidth();
+        int height = m.getHeight();
+        StringBuilder path = new StringBuilder();
+
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                if (!m.get(x, y)) {
+                    x++;
+                    continue;
+                }
+
+                int start = x;
+                while (x < width && m.get(x, y))
+                    x++;
+
+                path.append('M').append(start).append(' ').append(y)
+                        .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
+        }
+
+        String svg = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 " + width + " " + height
+                + "\" shape-rendering=\"crispEdges\">\n"
+                + "<rect width=\"" + width + "\" height=\"" + height + "\" fill=\"#fff\"/>\n"
+                + "<path d=\"" + path + "\" fill=\"#000\"/>\n"
+                + "</svg>\n";
+
+        os.write(svg.getBytes("UTF-8"));
+        os.flush();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,40 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * Converts QR code matrices to pixel buffers with one pixel per module.
+ */
+public final class QRCodePixels {
+    private QRCodePixels() {
+    }
+
+    /**
+     * Fills a row-major pixel buffer from a QR code's matrix. The buffer is written sequentially,
+     * one matrix row after another.
+     *
+     * @param m      The QR code's matrix, where set bits are black modules.
+     * @param pixels The pixel buffer holding at least width * height pixels.
+     * @param row    A reusable row buffer or null.
+     * @param black  The color of black modules.
+     * @param white  The color of white modules.
+     * @return The row buffer, which should be passed to the next call.
+     */
+    public static BitArray fill(BitMatrix m, int[] pixels, BitArray row, int black, int white) {
+        int width = m.getWidth();
+        int height = m.getHeight();
+
+        if (row == null || row.getSize() < width)
+            row = new BitArray(width);
+
+        for (int y = 0; y < height; y++) {
+            row = m.getRow(y, row);
+            int offset = y * width;
+            for (int x = 0; x < width; x++)
+                pixels[offset + x] = row.get(x) ? black : white;
+        }
+
+        return row;
+    }
+}
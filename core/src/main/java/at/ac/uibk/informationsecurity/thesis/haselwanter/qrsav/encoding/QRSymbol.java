@@ -0,0 +1,103 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+
+import java.util.Locale;
+
+/**
+ * A QR code chosen by the {@link SymbolOptimizer}, i.e. its matrix together with the parameters
+ * it has been encoded with.
+ */
+public final class QRSymbol {
+    private final BitMatrix matrix;
+    private final String content;
+    private final ErrorCorrectionLevel level;
+    private final Mode mode;
+    private final int version;
+    private final int dimension;
+    private final int margin;
+    private final double moduleSize;
+    private final boolean meetsTarget;
+
+    QRSymbol(BitMatrix matrix, String content, ErrorCorrectionLevel level, Mode mode, int version,
+             int dimension, int margin, double moduleSize, boolean meetsTarget) {
+        this.matrix = matrix;
+        this.content = content;
+        this.level = level;
+        this.mode = mode;
+        this.version = version;
+        this.dimension = dimension;
+        this.margin = margin;
+        this.moduleSize = moduleSize;
+        this.meetsTarget = meetsTarget;
+    }
+
+    /**
+     * Returns the QR code's matrix with one bit per module, including the quiet zone.
+     */
+    public BitMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * Returns the encoded content, i.e. the chosen one of the alternative contents.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    public ErrorCorrectionLevel getErrorCorrectionLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the mode the content is encoded in, e.g. byte or alphanumeric.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the QR code's version between 1 and 40.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of modules per side without the quiet zone.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the width of the quiet zone in modules.
+     */
+    public int getMargin() {
+        return margin;
+    }
+
+    /**
+     * Returns the size of a module if the code including its quiet zone fills the target size, in
+     * the target size's unit.
+     */
+    public double getModuleSize() {
+        return moduleSize;
+    }
+
+    /**
+     * Returns whether the modules are at least as large as the optimizer's minimum module size.
+     */
+    public boolean meetsTarget() {
+        return meetsTarget;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "version %d (%d x %d modules), EC level %s, %s mode, module size %.2f",
+                version, dimension, dimension, level, mode, moduleSize);
+    }
+}
@@ -0,0 +1,115 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+
+/**
+ * Chooses the parameters of a QR code for a payload and the size it is printed or displayed at.
+ * <p>
+ * The payload may be given as alternative contents, e.g. a signature envelope in byte mode and
+ * as Base45 text in alphanumeric mode (see {@link EnvelopeEncoding}). Each content is encoded at
+ * the minimum error correction level, and the content giving the smallest code is chosen. Its
+ * error correction level is raised as long as the code keeps its version, since the extra
+ * redundancy is free then. The larger the modules are at the target size, the faster and from
+ * further away the code is scanned.
+ * </p>
+ * <p>
+ * ZXing encodes each content in a single mode, which it chooses from the characters, so mixing
+ * modes within one content is not considered.
+ * </p>
+ */
+public class SymbolOptimizer {
+    /**
+     * The width of the quiet zone required by the QR code specification.
+     */
+    public static final int DEFAULT_MARGIN = 4;
+
+    private final ErrorCorrectionLevel minLevel;
+    private final double minModuleSize;
+    private final int margin;
+
+    /**
+     * @param minLevel      The minimum error correction level.
+     * @param minModuleSize The minimum size of a module, in the unit of the target sizes, e.g.
+     *                      millimetres for printed labels or pixels for a display.
+     * @param margin        The width of the quiet zone in modules.
+     */
+    public SymbolOptimizer(ErrorCorrectionLevel minLevel, double minModuleSize, int margin) {
+        this.minLevel = minLevel;
+        this.minModuleSize = minModuleSize;
+        this.margin = margin;
+    }
+
+    /**
+     * Chooses the smallest QR code among the alternative contents and the error correction
+     * levels, and the highest level for it.
+     *
+     * @param contents   The alternative contents of the same payload, in order of preference.
+     * @param targetSize The width of the code including its quiet zone, e.g. in millimetres.
+     * @return The chosen {@link QRSymbol}, which does not meet the target if its modules are
+     * smaller than the minimum module size even so.
+     * @throws WriterException If none of the contents fits into a QR code.
+     */
+    public QRSymbol optimize(List<String> contents, double targetSize) throws WriterException {
+        QRCode best = null;
+        String bestContent = null;
+        WriterException tooBig = null;
+
+        for (String content : contents) {
+            QRCode qr;
+            try {
+                qr = encode(content, minLevel);
+            } catch (WriterException e) {
+                // Data too big at the minimum level.
+                tooBig = e;
+                continue;
+            }
+
+            if (best != null && qr.getVersion().getVersionNumber() >= best.getVersion().getVersionNumber())
+                continue;
+
+            // Raise the level as long as the version stays the same.
+            for (int i = minLevel.ordinal() + 1; i < ErrorCorrectionLevel.values().length; i++) {
+                QRCode higher;
+                try {
+                    higher = encode(content, ErrorCorrectionLevel.values()[i]);
+                } catch (WriterException e) {
+                    break;
+                }
+
+                if (higher.getVersion() != qr.getVersion())
+                    break;
+                qr = higher;
+            }
+
+            best = qr;
+            bestContent = content;
+        }
+
+        if (best == null)
+            throw tooBig != null ? tooBig : new WriterException("No content");
+
+        int dimension = best.getVersion().getDimensionForVersion();
+        double moduleSize = targetSize / (dimension + 2 * margin);
+
+        return new QRSymbol(QRCodeEncoder.encode(bestContent, best.getECLevel(), margin), bestContent,
+                best.getECLevel(), best.getMode(), best.getVersion().getVersionNumber(), dimension, margin,
+                moduleSize, moduleSize >= minModuleSize);
+    }
+
+    private static QRCode encode(String content, ErrorCorrectionLevel level) throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, QRCodeEncoder.getCharacterSet(content));
+
+        return Encoder.encode(content, level, hints);
+    }
+}
@@ -0,0 +1,226 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+/**
+ * Encodes EC public keys with compressed points, i.e. the x coordinate and the parity of y, which
+ * halves the size of the point, e.g. 33 instead of 65 bytes for P-256.
+ * <p>
+ * Not every provider parses compressed points, hence decompressing computes y itself:
+ * y = (x^3 + ax + b)^((p + 1) / 4) mod p, which is the square root for all prime fields with
+ * p = 3 mod 4, e.g. P-256, P-384 and P-521.
+ * </p>
+ */
+public final class EcPointCompression {
+    private static final int SEQUENCE = 0x30;
+    private static final int BIT_STRING = 0x03;
+    private static final byte UNCOMPRESSED = 0x04;
+    private static final byte COMPRESSED_EVEN = 0x02;
+    private static final byte COMPRESSED_ODD = 0x03;
+    private static final BigInteger THREE = BigInteger.valueOf(3);
+    private static final BigInteger FOUR = BigInteger.valueOf(4);
+
+    private EcPointCompression() {
+    }
+
+    /**
+     * Encodes the point of a public key compressed.
+     *
+     * @param key The public key.
+     * @return The compressed point: 0x02 or 0x03 for even or odd y followed by x.
+     */
+    public static byte[] compress(ECPublicKey key) {
+        int length = getFieldLength(key.getParams());
+        ECPoint w = key.getW();
+
+        byte[] point = new byte[1 + length];
+        point[0] = w.getAffineY().testBit(0) ? COMPRESSED_ODD : COMPRESSED_EVEN;
+        writeUnsigned(w.getAffineX(), point, 1, length);
+
+        return point;
+    }
+
+    /**
+     * Decodes a compressed point.
+     *
+     * @param point  The compressed point.
+     * @param params The curve's parameters.
+     * @return The point.
+     * @throws InvalidKeySpecException If the point is not compressed or not on the curve.
+     */
+    public static ECPoint decompress(byte[] point, ECParameterSpec params) throws InvalidKeySpecException {
+        if (!(params.getCurve().getField() instanceof ECFieldFp))
+            throw new InvalidKeySpecException("Only prime field curves are supported");
+
+        BigInteger p = ((ECFieldFp) params.getCurve().getField()).getP();
+        if (!p.testBit(0) || !p.testBit(1))
+            throw new InvalidKeySpecException("Only curves with p = 3 mod 4 are supported");
+
+        if (point.length != 1 + getFieldLength(params) || (point[0] != COMPRESSED_EVEN && point[0] != COMPRESSED_ODD))
+            throw new InvalidKeySpecException("Invalid compressed point");
+
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(point, 1, point.length));
+        if (x.compareTo(p) >= 0)
+            throw new InvalidKeySpecException("Invalid compressed point");
+
+        BigInteger rhs = x.pow(3).add(params.getCurve().getA().multiply(x)).add(params.getCurve().getB()).mod(p);
+        BigInteger y = rhs.modPow(p.add(BigInteger.ONE).divide(FOUR), p);
+
+        // Not a square, hence x is not on the curve.
+        if (!y.multiply(y).mod(p).equals(rhs))
+            throw new InvalidKeySpecException("Point is not on the curve");
+
+        if (y.testBit(0) != (point[0] == COMPRESSED_ODD))
+            y = p.subtract(y);
+
+        return new ECPoint(x, y);
+    }
+
+    /**
+     * Encodes a public key like {@link PublicKey#getEncoded()}, i.e. as X.509 SubjectPublicKeyInfo,
+     * but with a compressed point.
+     *
+     * @param key The public key.
+     * @return The X.509 encoded public key.
+     */
+    public static byte[] encodeX509(ECPublicKey key) {
+        byte[] encoded = key.getEncoded();
+        int[] pos = {0};
+        readHeader(encoded, pos, SEQUENCE);
+
+        // Keep the algorithm identifier, which names the curve, and replace the point.
+        int algStart = pos[0];
+        pos[0] = readHeader(encoded, pos, SEQUENCE);
+        byte[] algorithm = Arrays.copyOfRange(encoded, algStart, pos[0]);
+        byte[] point = compress(key);
+
+        byte[] bitString = concat(header(BIT_STRING, point.length + 1), new byte[]{0}, point);
+        byte[] content = concat(algorithm, bitString);
+
+        return concat(header(SEQUENCE, content.length), content);
+    }
+
+    /**
+     * Decodes a X.509 encoded EC public key with a compressed point.
+     *
+     * @param encoded    The X.509 encoded public key.
+     * @param keyFactory An EC key factory.
+     * @return The public key or null if the encoded key does not contain a compressed EC point.
+     * @throws InvalidKeySpecException If the encoded key is malformed or its curve is unknown.
+     */
+    public static PublicKey decodeX509(byte[] encoded, KeyFactory keyFactory) throws InvalidKeySpecException {
+        try {
+            int[] pos = {0};
+            readHeader(encoded, pos, SEQUENCE);
+
+            // The algorithm identifier holds the key algorithm's OID followed by the curve's OID.
+            int algEnd = readHeader(encoded, pos, SEQUENCE);
+            pos[0] = readAny(encoded, pos);
+            byte[] curve = Arrays.copyOfRange(encoded, pos[0], algEnd);
+            pos[0] = algEnd;
+
+            int end = readHeader(encoded, pos, BIT_STRING);
+            if (end - pos[0] < 2 || encoded[pos[0]] != 0
+                    || (encoded[pos[0] + 1] != COMPRESSED_EVEN && encoded[pos[0] + 1] != COMPRESSED_ODD))
+                return null;
+
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(curve);
+            ECParameterSpec params = parameters.getParameterSpec(ECParameterSpec.class);
+
+            ECPoint w = decompress(Arrays.copyOfRange(encoded, pos[0] + 1, end), params);
+
+            return keyFactory.generatePublic(new ECPublicKeySpec(w, params));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new InvalidKeySpecException("Invalid X.509 encoded EC public key", e);
+        } catch (GeneralSecurityException e) {
+            throw new InvalidKeySpecException("Unknown curve", e);
+        }
+    }
+
+    private static int getFieldLength(ECParameterSpec params) {
+        return (params.getCurve().getField().getFieldSize() + 7) / 8;
+    }
+
+    private static void writeUnsigned(BigInteger value, byte[] buf, int offset, int length) {
+        byte[] bytes = value.toByteArray();
+        // Skip the sign byte.
+        int start = bytes.length > length ? bytes.length - length : 0;
+        System.arraycopy(bytes, start, buf, offset + length - (bytes.length - start), bytes.length - start);
+    }
+
+    private static byte[] header(int tag, int length) {
+        if (length < 0x80)
+            return new byte[]{(byte) tag, (byte) length};
+        if (length <= 0xFF)
+            return new byte[]{(byte) tag, (byte) 0x81, (byte) length};
+
+        return new byte[]{(byte) tag, (byte) 0x82, (byte) (length >> 8), (byte) length};
+    }
+
+    /**
+     * Reads the tag and length of a DER element and moves behind them.
+     *
+     * @return The end of the element's content.
+     */
+    private static int readHeader(byte[] der, int[] pos, int tag) {
+        if (pos[0] >= der.length || (der[pos[0]] & 0xFF) != tag)
+            throw new IllegalArgumentException("Tag " + tag + " expected at " + pos[0]);
+
+        return readAny(der, pos);
+    }
+
+    private static int readAny(byte[] der, int[] pos) {
+        int p = pos[0] + 1;
+
+        if (p >= der.length)
+            throw new IllegalArgumentException("Truncated DER element");
+
+        int length = der[p++] & 0xFF;
+
+        if (length > 0x80) {
+            int n = length & 0x7F;
+            if (n > 2 || p + n > der.length)
+                throw new IllegalArgumentException("Unsupported DER length");
+
+            length = 0;
+            for (int i = 0; i < n; i++)
+                length = length << 8 | (der[p++] & 0xFF);
+        } else if (length == 0x80) {
+            throw new IllegalArgumentException("Indefinite DER length");
+        }
+
+        if (p + length > der.length)
+            throw new IllegalArgumentException("Truncated DER element");
+
+        pos[0] = p;
+        return p + length;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts)
+            length += part.length;
+
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Reads and writes the key files of the app's key directory, i.e. PKCS#8 encoded private keys and
+ * X.509 encoded public keys. EC public keys may be written with compressed points (see
+ * {@link EcPointCompression}), which are read regardless of the provider's support.
+ */
+public final class KeyFiles {
+    private KeyFiles() {
+    }
+
+    public static PrivateKey readPrivateKey(File file, KeyFactory keyFactory) throws IOException,
+            InvalidKeySpecException {
+        return keyFactory.generatePrivate(new PKCS8EncodedKeySpec(readFile(file)));
+    }
+
+    public static PublicKey readPublicKey(File file, KeyFactory keyFactory) throws IOException,
+            InvalidKeySpecException {
+        byte[] encoded = readFile(file);
+
+        try {
+            return keyFactory.generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (InvalidKeySpecException e) {
+            // The provider may not support compressed EC points.
+            PublicKey key = "EC".equals(keyFactory.getAlgorithm())
+                    ? EcPointCompression.decodeX509(encoded, keyFactory) : null;
+
+            if (key == null)
+                throw e;
+
+            return key;
+        }
+    }
+
+    /**
+     * Writes a X.509 encoded public key file.
+     *
+     * @param file       The public key file.
+     * @param key        The public key.
+     * @param compressed Whether an EC public key is written with a compressed point. Older
+     *                   versions of the app cannot read such keys.
+     */
+    public static void writePublicKey(File file, PublicKey key, boolean compressed) throws IOException {
+        byte[] encoded = compressed && key instanceof ECPublicKey
+                ? EcPointCompression.encodeX509((ECPublicKey) key) : key.getEncoded();
+
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(encoded);
+        } finally {
+            fos.close();
+        }
+    }
+
+    public static byte[] readFile(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[(int) file.length()];
+            int off = 0;
+            while (off < buf.length) {
+                int n = fis.read(buf, off, buf.length - off);
+                if (n < 0)
+                    throw new IOException("Unexpected end of \'" + file.getAbsolutePath() + "\'");
+                off += n;
+            }
+            return buf;
+        } finally {
+            fis.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+
+/**
+ * Computes short key identifiers for public keys and embeds them into the content of a QR code.
+ * <p>
+ * A key identifier is the truncated SHA-256 hash of the X.509 encoded public key. The generator
+ * puts it in front of the signed content, so the scanner picks exactly one public key for
+ * verifying the signature instead of trying all available keys.
+ * </p>
+ */
+public final class KeyIdentifier {
+    /**
+     * Number of hash bytes used as key identifier.
+     */
+    public static final int LENGTH = 4;
+    /**
+     * Separates the key identifier from the content. A control character does not appear in
+     * ordinary text, hence codes without a key identifier are not mistaken for ones with it.
+     */
+    private static final char SEPARATOR = '\u001D';
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private KeyIdentifier() {
+    }
+
+    /**
+     * Computes the key identifier of a public key.
+     *
+     * @param key The public key.
+     * @return The key identifier as hexadecimal String.
+     */
+    public static String of(PublicKey key) {
+        byte[] hash;
+
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(key.getEncoded());
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is supported by every Java platform.
+            throw new IllegalStateException(e);
+        }
+
+        return fromBytes(hash, 0);
+    }
+
+    /**
+     * Converts a key identifier to its {@link #LENGTH} bytes, e.g. for a binary envelope.
+     *
+     * @param keyId The key identifier as hexadecimal String.
+     * @return The key identifier's bytes.
+     */
+    public static byte[] toBytes(String keyId) {
+        if (keyId.length() != LENGTH * 2)
+            throw new IllegalArgumentException("Invalid key id " + keyId);
+
+        byte[] bytes = new byte[LENGTH];
+        for (int i = 0; i < LENGTH; i++)
+            bytes[i] = (byte) Integer.parseInt(keyId.substring(2 * i, 2 * i + 2), 16);
+
+        return bytes;
+    }
+
+    /**
+     * Converts {@link #LENGTH} bytes to a key identifier.
+     *
+     * @param bytes  The buffer holding the key identifier.
+     * @param offset The key identifier's offset within the buffer.
+     * @return The key identifier as hexadecimal String.
+     */
+    public static String fromBytes(byte[] bytes, int offset) {
+        char[] id = new char[LENGTH * 2];
+        for (int i = 0; i < LENGTH; i++) {
+            id[2 * i] = HEX[(bytes[offset + i] >> 4) & 0x0F];
+            id[2 * i + 1] = HEX[bytes[offset + i] & 0x0F];
+        }
+
+        return new String(id);
+    }
+
+    /**
+     * Puts the key identifier in front of the signed content.
+     *
+     * @param keyId   The key identifier.
+     * @param content The signed content, i.e. the message with its appended signature.
+     * @return The content to be encoded.
+     */
+    public static String prepend(String keyId, String content) {
+        return SEPARATOR + keyId + SEPARATOR + content;
+    }
+
+    /**
+     * Splits decoded content into its key identifier and the signed content.
+     *
+     * @param text The decoded content.
+     * @return The key identifier, which is null if the content does not contain one, and the
+     * signed content.
+     */
+    public static String[] split(String text) {
+        int end = LENGTH * 2 + 1;
+
+        if (text.length() > end && text.charAt(0) == SEPARATOR && text.charAt(end) == SEPARATOR)
+            return new String[]{text.substring(1, end), text.substring(end + 1)};
+
+        return new String[]{null, text};
+    }
+}
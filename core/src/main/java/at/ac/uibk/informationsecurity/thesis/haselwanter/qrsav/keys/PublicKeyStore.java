@@ -0,0 +1,175 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+/**
+ * Keeps all public keys of the key directory parsed in memory, so that verifying a signature
+ * does not need any file I/O or key parsing.
+ * <p>
+ * The key files are read once when the keys are requested for the first time. Afterwards the
+ * store is kept up to date by {@link #addKey(String, PublicKey)}, {@link #reloadKey(String)} and
+ * {@link #removeKey(String)}, e.g. called by a watcher of the key directory.
+ * </p>
+ * <p>
+ * Besides the list of all keys the store keeps an index from {@link KeyIdentifier key identifiers}
+ * to keys, so a signature is verified with exactly one key.
+ * </p>
+ * <p>
+ * Every change of the keys starts a new {@link #getGeneration() generation}, so results derived
+ * from the former keys, e.g. cached verdicts, are recognized as outdated.
+ * </p>
+ */
+public class PublicKeyStore {
+    private static final Logger LOG = Logger.getLogger(PublicKeyStore.class.getName());
+
+    private final SignatureSpecHolder holder;
+    private final File dir;
+    private final String suffix;
+    private final Map<String, PublicKey> keys;
+    private volatile List<PublicKey> snapshot;
+    private volatile Map<String, PublicKey> index;
+    private volatile boolean loaded;
+    private volatile int generation;
+
+    /**
+     * @param holder The signature specifications, which determine the key algorithm.
+     * @param dir    The key directory.
+     * @param suffix The suffix of all public key file names.
+     */
+    public PublicKeyStore(SignatureSpecHolder holder, File dir, String suffix) {
+        this.holder = holder;
+        this.dir = dir;
+        this.suffix = suffix;
+        keys = new LinkedHashMap<>();
+        snapshot = Collections.emptyList();
+        index = Collections.emptyMap();
+        loaded = false;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Returns all public keys of the store. The keys are loaded from the key directory on the
+     * first call only.
+     *
+     * @return An unmodifiable list of all public keys.
+     */
+    public List<PublicKey> getPublicKeys() throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        if (!loaded)
+            load();
+
+        return snapshot;
+    }
+
+    /**
+     * Returns the public key with the given key identifier.
+     *
+     * @param keyId The key identifier computed by {@link KeyIdentifier#of(PublicKey)}.
+     * @return The public key or null if no key with this identifier is available.
+     */
+    public PublicKey getPublicKey(String keyId) throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        if (!loaded)
+            load();
+
+        return index.get(keyId);
+    }
+
+    /**
+     * Reads and parses all public key files of the key directory.
+     */
+    public synchronized void load() throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        keys.clear();
+        String[] fileNames = dir.list();
+
+        if (fileNames != null) {
+            KeyFactory keyFactory = getKeyFactory();
+
+            for (String fileName : fileNames)
+                if (fileName.endsWith(suffix)) {
+                    String name = fileName.substring(0, fileName.length() - suffix.length());
+                    keys.put(name, KeyFiles.readPublicKey(new File(dir, fileName), keyFactory));
+                }
+        }
+
+        loaded = true;
+        updateSnapshot();
+        LOG.fine(keys.size() + " public keys loaded");
+    }
+
+    /**
+     * Adds a public key to the store.
+     *
+     * @param name The key's file name without suffix.
+     * @param key  The public key.
+     */
+    public synchronized void addKey(String name, PublicKey key) {
+        keys.put(name, key);
+        updateSnapshot();
+    }
+
+    /**
+     * Reads a public key file of the key directory again and adds its key to the store.
+     *
+     * @param name The key's file name without suffix.
+     */
+    public void reloadKey(String name) throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        addKey(name, KeyFiles.readPublicKey(new File(dir, name.concat(suffix)), getKeyFactory()));
+    }
+
+    /**
+     * Removes a public key from the store.
+     *
+     * @param name The key's file name without suffix.
+     */
+    public synchronized void removeKey(String name) {
+        if (keys.remove(name) != null)
+            updateSnapshot();
+    }
+
+    /**
+     * Returns the generation of the keys, which changes whenever keys are loaded, added or
+     * removed.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    private KeyFactory getKeyFactory() throws NoSuchAlgorithmException, NoSuchProviderException {
+        return KeyFactory.getInstance(holder.getAlgorithmForKeys(), holder.getProvider());
+    }
+
+    private void updateSnapshot() {
+        Map<String, PublicKey> ids = new HashMap<>();
+        for (PublicKey key : keys.values())
+            ids.put(KeyIdentifier.of(key), key);
+
+        snapshot = Collections.unmodifiableList(new ArrayList<>(keys.values()));
+        index = Collections.unmodifiableMap(ids);
+        generation++;
+    }
+}
@@ -0,0 +1,151 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.security.interfaces.ECKey;
+
+/**
+ * Converts ECDSA signatures between the DER encoding returned by {@link java.security.Signature}
+ * and the raw encoding r||s.
+ * <p>
+ * A DER signature is a SEQUENCE of the two INTEGERs r and s, whose length varies with leading
+ * zeros and sign bytes, e.g. 70 to 72 bytes for P-256. The raw encoding is the concatenation of
+ * r and s, both padded to the length of the curve's order, e.g. always 64 bytes for P-256.
+ * </p>
+ */
+public final class EcdsaSignatureFormat {
+    private static final int SEQUENCE = 0x30;
+    private static final int INTEGER = 0x02;
+
+    private EcdsaSignatureFormat() {
+    }
+
+    /**
+     * Returns the length of r and s for keys of the given curve.
+     *
+     * @param key A public or private key of the curve.
+     * @return The length of the curve's order in bytes.
+     */
+    public static int getComponentLength(ECKey key) {
+        return (key.getParams().getOrder().bitLength() + 7) / 8;
+    }
+
+    /**
+     * Converts a DER encoded signature to r||s.
+     *
+     * @param der    The DER encoded signature.
+     * @param length The length of r and s, see {@link #getComponentLength(ECKey)}.
+     * @return The raw signature of twice the given length.
+     * @throws IllegalArgumentException If the signature is not a valid DER encoded ECDSA signature.
+     */
+    public static byte[] toRaw(byte[] der, int length) {
+        int[] pos = {0};
+        int end = readHeader(der, pos, SEQUENCE);
+
+        if (end != der.length)
+            throw new IllegalArgumentException("Trailing bytes after ECDSA signature");
+
+        byte[] raw = new byte[2 * length];
+        readInteger(der, pos, raw, 0, length);
+        readInteger(der, pos, raw, length, length);
+
+        if (pos[0] != end)
+            throw new IllegalArgumentException("Invalid ECDSA signature sequence");
+
+        return raw;
+    }
+
+    /**
+     * Converts a r||s signature to DER.
+     *
+     * @param raw The raw signature.
+     * @return The DER encoded signature.
+     * @throws IllegalArgumentException If the raw signature's length is odd.
+     */
+    public static byte[] toDer(byte[] raw) {
+        if (raw.length == 0 || raw.length % 2 != 0)
+            throw new IllegalArgumentException("Invalid raw ECDSA signature length " + raw.length);
+
+        int length = raw.length / 2;
+        byte[] r = toInteger(raw, 0, length);
+        byte[] s = toInteger(raw, length, length);
+        int contentLength = r.length + s.length;
+        // Only P-521 signatures need the long form of the sequence's length.
+        int headerLength = contentLength < 0x80 ? 2 : 3;
+
+        byte[] der = new byte[headerLength + contentLength];
+        der[0] = SEQUENCE;
+        if (headerLength == 2) {
+            der[1] = (byte) contentLength;
+        } else {
+            der[1] = (byte) 0x81;
+            der[2] = (byte) contentLength;
+        }
+        System.arraycopy(r, 0, der, headerLength, r.length);
+        System.arraycopy(s, 0, der, headerLength + r.length, s.length);
+
+        return der;
+    }
+
+    private static byte[] toInteger(byte[] raw, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+
+        // Strip leading zeros, but keep one byte for zero.
+        while (start < end - 1 && raw[start] == 0)
+            start++;
+
+        // Prepend a zero if the high bit is set, since DER INTEGERs are signed.
+        int pad = (raw[start] & 0x80) != 0 ? 1 : 0;
+        int valueLength = end - start + pad;
+
+        byte[] integer = new byte[2 + valueLength];
+        integer[0] = INTEGER;
+        integer[1] = (byte) valueLength;
+        System.arraycopy(raw, start, integer, 2 + pad, end - start);
+
+        return integer;
+    }
+
+    private static void readInteger(byte[] der, int[] pos, byte[] raw, int offset, int length) {
+        int end = readHeader(der, pos, INTEGER);
+        int start = pos[0];
+
+        // Strip the sign byte and any leading zeros.
+        while (start < end && der[start] == 0)
+            start++;
+
+        if (end - start > length)
+            throw new IllegalArgumentException("ECDSA signature component too long");
+
+        System.arraycopy(der, start, raw, offset + length - (end - start), end - start);
+        pos[0] = end;
+    }
+
+    /**
+     * Reads the tag and length of a DER element.
+     *
+     * @return The end of the element's content.
+     */
+    private static int readHeader(byte[] der, int[] pos, int tag) {
+        int p = pos[0];
+
+        if (p + 2 > der.length || der[p] != tag)
+            throw new IllegalArgumentException("Invalid ECDSA signature: tag expected at " + p);
+
+        int length = der[p + 1] & 0xFF;
+        p += 2;
+
+        if (length == 0x81) {
+            if (p >= der.length)
+                throw new IllegalArgumentException("Invalid ECDSA signature length at " + p);
+            length = der[p++] & 0xFF;
+        } else if (length > 0x80) {
+            throw new IllegalArgumentException("Unsupported ECDSA signature length at " + p);
+        }
+
+        if (p + length > der.length)
+            throw new IllegalArgumentException("Truncated ECDSA signature");
+
+        pos[0] = p;
+        return p + length;
+    }
+}
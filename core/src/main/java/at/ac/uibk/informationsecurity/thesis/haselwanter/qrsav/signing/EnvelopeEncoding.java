@@ -0,0 +1,90 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.nio.charset.Charset;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding.Base45;
+
+/**
+ * The ways a binary {@link SignatureEnvelope} is put into the content of a QR code.
+ */
+public enum EnvelopeEncoding {
+    /**
+     * The envelope's bytes as ISO-8859-1 String, which the QR code encoder writes in byte mode with
+     * one byte per character. This is the most compact encoding.
+     */
+    BYTE,
+    /**
+     * The envelope's bytes as Base45 text behind the prefix <code>QS:</code>, which the QR code
+     * encoder writes in alphanumeric mode. The content is plain text, e.g. for sharing it.
+     */
+    BASE45;
+
+    static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String BASE45_PREFIX = "QS:";
+
+    /**
+     * Builds the content of a QR code.
+     *
+     * @param envelope The envelope's bytes.
+     * @return The content to be encoded.
+     */
+    public String toContent(byte[] envelope) {
+        if (this == BASE45)
+            return BASE45_PREFIX + Base45.encode(envelope);
+
+        return new String(envelope, ISO_8859_1);
+    }
+
+    /**
+     * Returns the envelope's bytes of decoded QR code content.
+     *
+     * @param content The decoded content.
+     * @return The envelope's bytes or null if the content is not a binary envelope in any encoding.
+     */
+    public static byte[] toEnvelope(String content) {
+        return toBytes(content, SignatureEnvelope.MAGIC);
+    }
+
+    /**
+     * Returns the bytes of decoded QR code content which starts with the given magic byte in any
+     * encoding.
+     *
+     * @return The bytes or null if the content is not binary content with this magic byte.
+     */
+    static byte[] toBytes(String content, int magic) {
+        if (isByteContent(content, magic))
+            return content.getBytes(ISO_8859_1);
+
+        if (content.startsWith(BASE45_PREFIX)) {
+            try {
+                byte[] bytes = Base45.decode(content.substring(BASE45_PREFIX.length()));
+
+                if (bytes.length > 0 && (bytes[0] & 0xFF) == magic)
+                    return bytes;
+            } catch (IllegalArgumentException e) {
+                // Ordinary text which happens to start like Base45 content.
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns whether the content is a binary envelope in byte mode, i.e. starts with the magic
+     * byte and consists of ISO-8859-1 characters only.
+     */
+    public static boolean isByteContent(String content) {
+        return isByteContent(content, SignatureEnvelope.MAGIC);
+    }
+
+    static boolean isByteContent(String content, int magic) {
+        if (content.length() == 0 || content.charAt(0) != magic)
+            return false;
+
+        for (int i = 1; i < content.length(); i++)
+            if (content.charAt(i) > 0xFF)
+                return false;
+
+        return true;
+    }
+}
@@ -0,0 +1,167 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A part of a binary {@link SignatureEnvelope} which is too large for one QR code. Each part is
+ * put into a QR code of its own like with the structured append of QR codes. The signature
+ * covers the whole envelope, hence the parts are verified once they are reassembled.
+ * <p>
+ * A part consists of a 6 byte header and a slice of the envelope:
+ * </p>
+ * <pre>
+ * 0xFE | index (4 bits) | count - 1 (4 bits) | document id (4) | slice
+ * </pre>
+ * <p>
+ * The document id is the truncated SHA-256 hash of the whole envelope, which tells the parts of
+ * different documents apart and detects wrongly reassembled envelopes. Like structured append,
+ * an envelope is split into at most {@link #MAX_PARTS} parts. ZXing does not write the structured
+ * append header of QR codes, hence the parts carry their own header.
+ * </p>
+ */
+public final class EnvelopePart {
+    /**
+     * The first byte of each part, which never occurs in UTF-8 text either.
+     */
+    public static final int MAGIC = 0xFE;
+    /**
+     * The maximum number of parts of an envelope.
+     */
+    public static final int MAX_PARTS = 16;
+    /**
+     * The length of a part's header in bytes.
+     */
+    public static final int HEADER_LENGTH = 6;
+
+    private final int index;
+    private final int count;
+    private final int documentId;
+    private final byte[] slice;
+
+    private EnvelopePart(int index, int count, int documentId, byte[] slice) {
+        this.index = index;
+        this.count = count;
+        this.documentId = documentId;
+        this.slice = slice;
+    }
+
+    /**
+     * Splits an envelope into as few parts as possible.
+     *
+     * @param envelope  The envelope's bytes.
+     * @param maxLength The maximum length of a part in bytes including its header.
+     * @return The parts' bytes, which are turned into QR code content by any
+     * {@link EnvelopeEncoding}.
+     * @throws IllegalArgumentException If the envelope is empty, the maximum length leaves no room
+     *                                  for data after the header or more than {@link #MAX_PARTS}
+     *                                  parts would be needed.
+     */
+    public static List<byte[]> split(byte[] envelope, int maxLength) {
+        int sliceLength = maxLength - HEADER_LENGTH;
+
+        if (sliceLength <= 0)
+            throw new IllegalArgumentException("Maximum part length " + maxLength + " <= header length "
+                    + HEADER_LENGTH);
+        if (envelope.length == 0)
+            throw new IllegalArgumentException("Empty envelope");
+
+        int count = (envelope.length + sliceLength - 1) / sliceLength;
+
+        if (count > MAX_PARTS)
+            throw new IllegalArgumentException("Data too big for " + MAX_PARTS + " parts: "
+                    + envelope.length + " bytes");
+
+        // Slices of equal length give codes of about the same size.
+        sliceLength = (envelope.length + count - 1) / count;
+        int documentId = documentId(envelope);
+        List<byte[]> parts = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            int from = i * sliceLength;
+            int to = Math.min(from + sliceLength, envelope.length);
+
+            ByteBuffer part = ByteBuffer.allocate(HEADER_LENGTH + to - from);
+            part.put((byte) MAGIC);
+            part.put((byte) (i << 4 | (count - 1)));
+            part.putInt(documentId);
+            part.put(envelope, from, to - from);
+            parts.add(part.array());
+        }
+
+        return parts;
+    }
+
+    /**
+     * Parses decoded QR code content as part of an envelope.
+     *
+     * @param content The decoded content.
+     * @return The part or null if the content is not a part in any {@link EnvelopeEncoding}.
+     */
+    public static EnvelopePart parse(String content) {
+        byte[] bytes = EnvelopeEncoding.toBytes(content, MAGIC);
+
+        if (bytes == null || bytes.length <= HEADER_LENGTH)
+            return null;
+
+        int index = (bytes[1] & 0xF0) >> 4;
+        int count = (bytes[1] & 0x0F) + 1;
+
+        if (index >= count)
+            return null;
+
+        return new EnvelopePart(index, count, ByteBuffer.wrap(bytes, 2, 4).getInt(),
+                Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length));
+    }
+
+    /**
+     * Returns whether the content is a part in byte mode, which the QR code encoder writes with
+     * one byte per character like an envelope.
+     */
+    public static boolean isByteContent(String content) {
+        return EnvelopeEncoding.isByteContent(content, MAGIC);
+    }
+
+    /**
+     * Returns the identifier of the envelope the parts belong to.
+     *
+     * @param envelope The envelope's bytes.
+     */
+    public static int documentId(byte[] envelope) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(envelope)).getInt();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is supported by every Java platform.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the part's position between 0 and {@link #getCount()} - 1.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the number of parts of the envelope.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * Returns the part's slice of the envelope.
+     */
+    public byte[] getSlice() {
+        return slice;
+    }
+}
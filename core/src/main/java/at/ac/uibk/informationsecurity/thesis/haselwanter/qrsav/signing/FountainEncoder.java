@@ -0,0 +1,59 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+/**
+ * Encodes a binary {@link SignatureEnvelope} into an endless sequence of {@link FountainPacket}s,
+ * each of which is shown as a QR code of its own. The envelope is cut into blocks of equal
+ * length, the last one padded with zeros. Packets can be built for any sequence number, hence a
+ * stream is never repeated.
+ */
+public class FountainEncoder {
+    private final byte[][] blocks;
+    private final int documentId;
+    private final int length;
+
+    /**
+     * @param envelope    The envelope's bytes.
+     * @param blockLength The length of a block in bytes, i.e. a packet's length without header.
+     * @throws IllegalArgumentException If the envelope is longer than
+     *                                  {@link FountainPacket#MAX_LENGTH}.
+     */
+    public FountainEncoder(byte[] envelope, int blockLength) {
+        if (envelope.length > FountainPacket.MAX_LENGTH)
+            throw new IllegalArgumentException("Data too big for streaming: " + envelope.length + " bytes");
+
+        int count = (envelope.length + blockLength - 1) / blockLength;
+        blocks = new byte[count][blockLength];
+
+        for (int i = 0; i < count; i++)
+            System.arraycopy(envelope, i * blockLength, blocks[i], 0,
+                    Math.min(blockLength, envelope.length - i * blockLength));
+
+        documentId = EnvelopePart.documentId(envelope);
+        length = envelope.length;
+    }
+
+    /**
+     * Builds a packet of the stream.
+     *
+     * @param sequenceNumber The packet's sequence number starting at 0.
+     * @return The packet's bytes, which are turned into QR code content by any
+     * {@link EnvelopeEncoding}.
+     */
+    public byte[] packet(int sequenceNumber) {
+        byte[] block = new byte[blocks[0].length];
+
+        for (int i : FountainPacket.getBlockIndices(documentId, sequenceNumber, blocks.length))
+            for (int j = 0; j < block.length; j++)
+                block[j] ^= blocks[i][j];
+
+        return new FountainPacket(documentId, length, sequenceNumber, block).toBytes();
+    }
+
+    /**
+     * Returns the number of blocks, i.e. about the number of packets needed to decode the
+     * envelope.
+     */
+    public int getBlockCount() {
+        return blocks.length;
+    }
+}
@@ -0,0 +1,217 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A packet of a binary {@link SignatureEnvelope} streamed as a sequence of QR codes, e.g. shown
+ * one after another on a display. The envelope is cut into blocks of equal length, and the
+ * packets carry the blocks or the XOR of several blocks, i.e. they are encoded with a systematic
+ * LT fountain code (see {@link FountainEncoder}). Any packets decode the envelope once a few
+ * more than there are blocks have been received, hence the scanner does not have to catch
+ * particular frames. The signature covers the whole envelope.
+ * <p>
+ * A packet consists of an 11 byte header and the encoded block:
+ * </p>
+ * <pre>
+ * 0xFD | document id (4) | envelope length (2) | sequence number (4) | block
+ * </pre>
+ * <p>
+ * The document id is the truncated SHA-256 hash of the whole envelope, like that of an
+ * {@link EnvelopePart}. The blocks a packet combines follow from its sequence number: the first
+ * packets carry one block each in order, and each later packet the XOR of a random set of
+ * blocks, whose size follows the robust soliton distribution.
+ * </p>
+ */
+public final class FountainPacket {
+    /**
+     * The first byte of each packet, which never occurs in UTF-8 text either.
+     */
+    public static final int MAGIC = 0xFD;
+    /**
+     * The length of a packet's header in bytes.
+     */
+    public static final int HEADER_LENGTH = 11;
+    /**
+     * The maximum length of a streamed envelope in bytes.
+     */
+    public static final int MAX_LENGTH = 0xFFFF;
+
+    /**
+     * The parameters of the robust soliton distribution.
+     */
+    private static final double SOLITON_C = 0.1;
+    private static final double SOLITON_DELTA = 0.5;
+
+    private final int documentId;
+    private final int length;
+    private final int sequenceNumber;
+    private final byte[] block;
+
+    FountainPacket(int documentId, int length, int sequenceNumber, byte[] block) {
+        this.documentId = documentId;
+        this.length = length;
+        this.sequenceNumber = sequenceNumber;
+        this.block = block;
+    }
+
+    /**
+     * Parses decoded QR code content as packet of a streamed envelope.
+     *
+     * @param content The decoded content.
+     * @return The packet or null if the content is not a packet in any {@link EnvelopeEncoding}.
+     */
+    public static FountainPacket parse(String content) {
+        byte[] bytes = EnvelopeEncoding.toBytes(content, MAGIC);
+
+        if (bytes == null || bytes.length <= HEADER_LENGTH)
+            return null;
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 1, HEADER_LENGTH - 1);
+        int documentId = buf.getInt();
+        int length = buf.getShort() & 0xFFFF;
+        int sequenceNumber = buf.getInt();
+
+        if (length == 0 || sequenceNumber < 0)
+            return null;
+
+        return new FountainPacket(documentId, length, sequenceNumber,
+                Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length));
+    }
+
+    /**
+     * Returns whether the content is a packet in byte mode, which the QR code encoder writes with
+     * one byte per character like an envelope.
+     */
+    public static boolean isByteContent(String content) {
+        return EnvelopeEncoding.isByteContent(content, MAGIC);
+    }
+
+    /**
+     * Builds the packet's bytes.
+     */
+    byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH + block.length);
+        buf.put((byte) MAGIC);
+        buf.putInt(documentId);
+        buf.putShort((short) length);
+        buf.putInt(sequenceNumber);
+        buf.put(block);
+
+        return buf.array();
+    }
+
+    /**
+     * Returns the indices of the blocks the packet with the given sequence number combines.
+     *
+     * @param documentId     The envelope's document id, which seeds the random choice.
+     * @param sequenceNumber The packet's sequence number.
+     * @param blockCount     The number of blocks of the envelope.
+     */
+    static int[] getBlockIndices(int documentId, int sequenceNumber, int blockCount) {
+        // The first packets carry the blocks themselves, which decode without loss at once.
+        if (sequenceNumber < blockCount)
+            return new int[]{sequenceNumber};
+
+        // java.util.Random is specified exactly, so encoder and decoder draw the same blocks. Its
+        // first numbers hardly differ for consecutive seeds, hence the seed is scrambled.
+        Random random = new Random(scramble((long) documentId << 32 ^ sequenceNumber));
+        int degree = getDegree(random.nextDouble(), blockCount);
+
+        // Draw the blocks without replacement by a partial Fisher-Yates shuffle.
+        int[] all = new int[blockCount];
+        for (int i = 0; i < blockCount; i++)
+            all[i] = i;
+
+        for (int i = 0; i < degree; i++) {
+            int j = i + random.nextInt(blockCount - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+
+        return Arrays.copyOf(all, degree);
+    }
+
+    /**
+     * Scrambles the bits of a seed by the finalizer of the SplitMix64 generator.
+     */
+    private static long scramble(long seed) {
+        seed = (seed ^ seed >>> 30) * 0xBF58476D1CE4E5B9L;
+        seed = (seed ^ seed >>> 27) * 0x94D049BB133111EBL;
+
+        return seed ^ seed >>> 31;
+    }
+
+    /**
+     * Maps a uniform random number to the number of blocks combined in a packet, which follows
+     * the robust soliton distribution for the given number of blocks.
+     */
+    private static int getDegree(double u, int blockCount) {
+        int k = blockCount;
+        double r = SOLITON_C * Math.log(k / SOLITON_DELTA) * Math.sqrt(k);
+        int spike = (int) Math.max(1, Math.min(k, Math.round(k / r)));
+        double[] weights = new double[k + 1];
+        double sum = 0;
+
+        for (int d = 1; d <= k; d++) {
+            // Ideal soliton distribution.
+            double w = d == 1 ? 1.0 / k : 1.0 / (d * (d - 1.0));
+
+            // Extra weight on small degrees and on the spike.
+            if (d < spike)
+                w += r / (d * (double) k);
+            else if (d == spike)
+                w += r * Math.log(r / SOLITON_DELTA) / k;
+
+            weights[d] = Math.max(0, w);
+            sum += weights[d];
+        }
+
+        double cumulative = 0;
+        for (int d = 1; d <= k; d++) {
+            cumulative += weights[d] / sum;
+            if (u < cumulative)
+                return d;
+        }
+
+        return k;
+    }
+
+    public int getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * Returns the length of the whole envelope in bytes.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Returns the number of blocks of the envelope.
+     */
+    public int getBlockCount() {
+        return (length + block.length - 1) / block.length;
+    }
+
+    /**
+     * Returns the indices of the blocks the packet combines.
+     */
+    public int[] getBlockIndices() {
+        return getBlockIndices(documentId, sequenceNumber, getBlockCount());
+    }
+
+    /**
+     * Returns the XOR of the blocks the packet combines.
+     */
+    public byte[] getBlock() {
+        return block.clone();
+    }
+}
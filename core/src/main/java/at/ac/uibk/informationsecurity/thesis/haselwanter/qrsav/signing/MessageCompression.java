@@ -0,0 +1,101 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the messages of {@link SignatureEnvelope}s with raw deflate, i.e. without zlib
+ * header and checksum, and a preset dictionary of the words found on labels. The dictionary
+ * lets even short messages refer back to known words, where plain deflate would not gain
+ * anything.
+ * <p>
+ * The dictionary is part of the envelope format. Changing it makes compressed codes unreadable,
+ * hence another dictionary needs a flag of its own.
+ * </p>
+ */
+final class MessageCompression {
+    /**
+     * The maximum length of an inflated message. QR codes hold at most 2953 bytes, so larger
+     * messages are forged on purpose, e.g. to exhaust the memory.
+     */
+    static final int MAX_MESSAGE_LENGTH = 64 * 1024;
+
+    /**
+     * Words of labels and tickets and the year-neutral parts of dates. Deflate finds recent
+     * matches at lower cost, hence the most frequent words come last.
+     */
+    private static final byte[] DICTIONARY = (
+            "Manufacturer: Production date: Delivery note: Description: Article no. Address: "
+                    + "https://www. .com .org .at .de Name: Phone: E-mail: Ticket: Seat: Row: Gate: "
+                    + "Valid until: Valid from: Best before: Use by: Charge: Menge: Gewicht: Herkunft: "
+                    + "Lager: Regal: Kunde: Auftrag: Ablaufdatum: Seriennummer: Austria Germany "
+                    + "Warehouse: Shelf: Customer: Order no. Item: Pallet: Quantity: pcs Weight: kg "
+                    + "Origin: Expiry: Serial: Batch: Lot: pallet batch lot serial expiry origin "
+                    + "weight kg order customer warehouse shelf item quantity -12-31 -01-01 ").getBytes(Charset.forName("UTF-8"));
+
+    private MessageCompression() {
+    }
+
+    /**
+     * Compresses a message.
+     *
+     * @param message The UTF-8 encoded message.
+     * @return The raw deflate stream.
+     */
+    static byte[] deflate(byte[] message) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(message);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(message.length);
+            byte[] buf = new byte[256];
+            while (!deflater.finished())
+                out.write(buf, 0, deflater.deflate(buf));
+
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses a message.
+     *
+     * @param deflated The raw deflate stream.
+     * @return The UTF-8 encoded message.
+     * @throws DataFormatException if the stream is malformed, truncated or inflates to more than
+     *                             {@link #MAX_MESSAGE_LENGTH} bytes.
+     */
+    static byte[] inflate(byte[] deflated) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(deflated);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length * 3);
+            byte[] buf = new byte[256];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+
+                // The stream of an empty message ends without any output.
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new DataFormatException("Truncated compressed message");
+                if (out.size() + n > MAX_MESSAGE_LENGTH)
+                    throw new DataFormatException("Compressed message exceeds " + MAX_MESSAGE_LENGTH + " bytes");
+
+                out.write(buf, 0, n);
+            }
+
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
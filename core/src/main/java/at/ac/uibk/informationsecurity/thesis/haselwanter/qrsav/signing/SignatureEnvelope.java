@@ -0,0 +1,293 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyIdentifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+
+/**
+ * The content of a signed QR code: the signer's key identifier, the message and its signature.
+ * <p>
+ * Signed QR codes are binary envelopes:
+ * </p>
+ * <pre>
+ * magic (0xFF) | version | flags | scheme | key id (4 bytes) | signature length | signature | message (UTF-8)
+ * </pre>
+ * <p>
+ * The magic byte never occurs in UTF-8 text, hence envelopes are told apart from plain codes. The
+ * scheme is the id of the {@link SignatureScheme} used for signing. Envelopes of version 1 have no
+ * scheme byte and are still opened. The signature covers the header up to the key id and the
+ * message. With {@link #FLAG_RAW_SIGNATURE}
+ * an ECDSA signature is stored as fixed-length r||s instead of DER. With {@link #FLAG_DEFLATE}
+ * the message is compressed (see {@link MessageCompression}). The signature covers the
+ * compressed message, which is inflated only when it is requested, i.e. after verifying. The envelope's bytes are put
+ * into the QR code as described by {@link EnvelopeEncoding}.
+ * </p>
+ * <p>
+ * {@link #open(SignatureHandler, String)} also opens the legacy format of version 0, i.e. the
+ * UTF-8 text with the signature's ISO-8859-1 characters appended and an optional key identifier
+ * in front, and codes without signature.
+ * </p>
+ */
+public final class SignatureEnvelope {
+    /**
+     * The first byte of a binary envelope.
+     */
+    public static final int MAGIC = 0xFF;
+    /**
+     * The version of the legacy text format.
+     */
+    public static final int VERSION_LEGACY = 0;
+    /**
+     * The first version of the binary format, without scheme.
+     */
+    public static final int VERSION_1 = 1;
+    /**
+     * The current version of the binary format.
+     */
+    public static final int VERSION = 2;
+    /**
+     * The signature is an ECDSA signature in the raw encoding r||s (see
+     * {@link EcdsaSignatureFormat}).
+     */
+    public static final int FLAG_RAW_SIGNATURE = 0x01;
+    /**
+     * The message is compressed with raw deflate and the preset dictionary of
+     * {@link MessageCompression}.
+     */
+    public static final int FLAG_DEFLATE = 0x02;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * The length of the signed header, i.e. magic, version, flags, scheme and key id.
+     */
+    private static final int HEADER_LENGTH = 4 + KeyIdentifier.LENGTH;
+    private static final int KNOWN_FLAGS = FLAG_RAW_SIGNATURE | FLAG_DEFLATE;
+
+    private final int version;
+    private final int schemeId;
+    private final String keyId;
+    private final String message;
+    /**
+     * The compressed message or null if the message is not compressed.
+     */
+    private final byte[] deflated;
+    private final byte[] signature;
+    private final byte[] signedData;
+
+    private SignatureEnvelope(int version, int schemeId, String keyId, String message, byte[] deflated,
+                              byte[] signature, byte[] signedData) {
+        this.version = version;
+        this.schemeId = schemeId;
+        this.keyId = keyId;
+        this.message = message;
+        this.deflated = deflated;
+        this.signature = signature;
+        this.signedData = signedData;
+    }
+
+    /**
+     * Builds the signed header of a binary envelope.
+     *
+     * @param keyId  The signer's key identifier.
+     * @param flags  The envelope's flags, e.g. {@link #FLAG_RAW_SIGNATURE}.
+     * @param scheme The signature scheme or null if it is not part of the registry.
+     * @return The header to be signed together with the message.
+     */
+    static byte[] header(String keyId, int flags, SignatureScheme scheme) {
+        byte[] header = new byte[HEADER_LENGTH];
+        header[0] = (byte) MAGIC;
+        header[1] = VERSION;
+        header[2] = (byte) flags;
+        header[3] = (byte) (scheme == null ? SignatureScheme.UNKNOWN_ID : scheme.getId());
+        System.arraycopy(KeyIdentifier.toBytes(keyId), 0, header, 4, KeyIdentifier.LENGTH);
+
+        return header;
+    }
+
+    /**
+     * Builds a binary envelope.
+     *
+     * @param header    The signed header built by {@link #header(String, int, SignatureScheme)}.
+     * @param signature The signature over header and message.
+     * @param message   The UTF-8 encoded message.
+     * @return The envelope's bytes.
+     */
+    static byte[] seal(byte[] header, byte[] signature, byte[] message) {
+        if (signature.length > 0xFF)
+            throw new IllegalArgumentException("Signature too long: " + signature.length + " bytes");
+
+        byte[] envelope = new byte[header.length + 1 + signature.length + message.length];
+        System.arraycopy(header, 0, envelope, 0, header.length);
+        envelope[header.length] = (byte) signature.length;
+        System.arraycopy(signature, 0, envelope, header.length + 1, signature.length);
+        System.arraycopy(message, 0, envelope, header.length + 1 + signature.length, message.length);
+
+        return envelope;
+    }
+
+    /**
+     * Splits the decoded content of a QR code into key identifier, message and signature.
+     *
+     * @param sh   The signature handler, which knows the signature's format of legacy codes.
+     * @param text The decoded content.
+     * @return The {@link SignatureEnvelope}.
+     */
+    public static SignatureEnvelope open(SignatureHandler sh, String text) {
+        byte[] envelope = EnvelopeEncoding.toEnvelope(text);
+
+        if (envelope != null) {
+            SignatureEnvelope binary = openBinary(envelope);
+
+            // Otherwise the text only looks like an envelope, e.g. it starts with U+00FF.
+            if (binary != null)
+                return binary;
+        }
+
+        return openLegacy(sh, text);
+    }
+
+    private static SignatureEnvelope openBinary(byte[] envelope) {
+        if (envelope.length < 2 || (envelope[0] & 0xFF) != MAGIC
+                || (envelope[1] != VERSION && envelope[1] != VERSION_1))
+            return null;
+
+        int version = envelope[1];
+        // Version 1 has no scheme byte.
+        int keyIdOffset = version == VERSION_1 ? 3 : 4;
+        int headerLength = keyIdOffset + KeyIdentifier.LENGTH;
+
+        if (envelope.length <= headerLength || (envelope[2] & ~KNOWN_FLAGS) != 0)
+            return null;
+
+        int schemeId = version == VERSION_1 ? SignatureScheme.UNKNOWN_ID : envelope[3] & 0xFF;
+        int sigLength = envelope[headerLength] & 0xFF;
+        int msgOffset = headerLength + 1 + sigLength;
+
+        if (sigLength == 0 || msgOffset > envelope.length)
+            return null;
+
+        byte[] signedData = new byte[headerLength + envelope.length - msgOffset];
+        System.arraycopy(envelope, 0, signedData, 0, headerLength);
+        System.arraycopy(envelope, msgOffset, signedData, headerLength, envelope.length - msgOffset);
+
+        byte[] sig = Arrays.copyOfRange(envelope, headerLength + 1, msgOffset);
+
+        // The signature handler verifies DER encoded ECDSA signatures only.
+        if ((envelope[2] & FLAG_RAW_SIGNATURE) != 0) {
+            try {
+                sig = EcdsaSignatureFormat.toDer(sig);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        String keyId = KeyIdentifier.fromBytes(envelope, keyIdOffset);
+
+        // Do not inflate a message before its signature is verified.
+        if ((envelope[2] & FLAG_DEFLATE) != 0)
+            return new SignatureEnvelope(version, schemeId, keyId, null,
+                    Arrays.copyOfRange(envelope, msgOffset, envelope.length), sig, signedData);
+
+        return new SignatureEnvelope(version, schemeId, keyId,
+                new String(envelope, msgOffset, envelope.length - msgOffset, UTF_8), null, sig, signedData);
+    }
+
+    private static SignatureEnvelope openLegacy(SignatureHandler sh, String text) {
+        // Split off the signer's key identifier if the QR code contains one.
+        String[] idContent = KeyIdentifier.split(text);
+        // Split the rest into data part and signature part.
+        String[] dataSign = sh.getContent(idContent[1]);
+
+        // QR code does not contain a signature.
+        if (dataSign.length != 2)
+            return new SignatureEnvelope(VERSION_LEGACY, SignatureScheme.UNKNOWN_ID, null, dataSign[0], null, null, null);
+
+        try {
+            // Get signature bytes in ISO-8859-1 format.
+            return new SignatureEnvelope(VERSION_LEGACY, SignatureScheme.UNKNOWN_ID, idContent[0], dataSign[0], null,
+                    dataSign[1].getBytes("ISO-8859-1"), dataSign[0].getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 and ISO-8859-1 are supported by every Java platform.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the envelope's version, i.e. {@link #VERSION_LEGACY} for legacy codes.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the signature scheme recorded in the envelope.
+     *
+     * @return The scheme or null if the envelope does not record one or it is unknown.
+     */
+    public SignatureScheme getScheme() {
+        return SignatureScheme.fromId(schemeId);
+    }
+
+    /**
+     * Returns the signer's key identifier or null if the QR code does not contain one.
+     */
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Returns the message. A compressed message is inflated on every call, hence only after its
+     * signature has been verified.
+     *
+     * @throws IllegalArgumentException if the compressed message is malformed.
+     */
+    public String getMessage() {
+        if (deflated == null)
+            return message;
+
+        try {
+            return new String(MessageCompression.inflate(deflated), UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed message: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns whether the message is compressed.
+     */
+    public boolean isCompressed() {
+        return deflated != null;
+    }
+
+    /**
+     * Returns the message's signature or null if the QR code is not signed.
+     */
+    public SignatureEntity getSignature() {
+        return signature == null ? null : new SignatureEntity(signature);
+    }
+
+    /**
+     * Returns the bytes of the message's signature as expected by {@link java.security.Signature},
+     * i.e. DER encoded for ECDSA, or null if the QR code is not signed.
+     */
+    public byte[] getSignatureBytes() {
+        return signature;
+    }
+
+    public boolean isSigned() {
+        return signature != null;
+    }
+
+    /**
+     * Returns the signed data, i.e. the header and the UTF-8 encoded message of a binary envelope
+     * or the UTF-8 encoded message of a legacy code.
+     */
+    public byte[] getSignedData() {
+        return signedData;
+    }
+}
@@ -0,0 +1,141 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+/**
+ * The registry of supported signature schemes. A scheme sets the algorithms of the
+ * {@link SignatureSpecHolder} and is recorded by its id in the header of each
+ * {@link SignatureEnvelope}, so the scanner knows how a code has been signed.
+ * <p>
+ * Whether a scheme is available depends on the security provider: Ed25519 is supported by the
+ * SunEC provider of Java 15 and later and by recent Bouncy Castle versions, but not by the
+ * Bouncy Castle bundled with Android.
+ * </p>
+ */
+public enum SignatureScheme {
+    /**
+     * ECDSA with SHA-256 on the curve P-256, the app's default. Signatures are stored as 64 bytes
+     * r||s.
+     */
+    ECDSA_P256(1, "EC", "SHA256withECDSA"),
+    /**
+     * EdDSA on Curve25519. Signatures are 64 bytes and deterministic, verifying is faster than
+     * with ECDSA.
+     */
+    ED25519(2, "Ed25519", "Ed25519");
+
+    /**
+     * The scheme id of envelopes whose scheme is not part of the registry.
+     */
+    public static final int UNKNOWN_ID = 0;
+
+    private final int id;
+    private final String keyAlgorithm;
+    private final String signAlgorithm;
+
+    SignatureScheme(int id, String keyAlgorithm, String signAlgorithm) {
+        this.id = id;
+        this.keyAlgorithm = keyAlgorithm;
+        this.signAlgorithm = signAlgorithm;
+    }
+
+    /**
+     * Returns the scheme's id in the envelope header.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public String getSignAlgorithm() {
+        return signAlgorithm;
+    }
+
+    /**
+     * Sets the scheme's algorithms and the security provider as signature specifications.
+     *
+     * @param holder   The signature specifications.
+     * @param provider The security provider.
+     * @return The holder.
+     */
+    public SignatureSpecHolder configure(SignatureSpecHolder holder, String provider) {
+        holder.setSpecs(keyAlgorithm, signAlgorithm, provider);
+
+        return holder;
+    }
+
+    /**
+     * Returns whether the security provider supports the scheme.
+     */
+    public boolean isAvailable(String provider) {
+        try {
+            Signature.getInstance(signAlgorithm, provider);
+            KeyPairGenerator.getInstance(keyAlgorithm, provider);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Generates a key pair of the scheme.
+     *
+     * @param provider The security provider.
+     * @param random   The source of randomness or null for the provider's default.
+     * @return The new key pair.
+     */
+    public KeyPair generateKeyPair(String provider, SecureRandom random) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidAlgorithmParameterException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm, provider);
+        SecureRandom r = random == null ? new SecureRandom() : random;
+
+        if (this == ECDSA_P256)
+            generator.initialize(new ECGenParameterSpec("secp256r1"), r);
+        else
+            // Ed25519 has a single key size, which also selects the curve.
+            generator.initialize(255, r);
+
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Returns the scheme with the given id.
+     *
+     * @param id The id of the envelope header.
+     * @return The scheme or null if the id is unknown.
+     */
+    public static SignatureScheme fromId(int id) {
+        for (SignatureScheme scheme : values())
+            if (scheme.id == id)
+                return scheme;
+
+        return null;
+    }
+
+    /**
+     * Returns the scheme of the given signature specifications.
+     *
+     * @param holder The signature specifications.
+     * @return The scheme or null if the signature algorithm is not part of the registry.
+     */
+    public static SignatureScheme of(SignatureSpecHolder holder) {
+        for (SignatureScheme scheme : values())
+            if (scheme.signAlgorithm.equalsIgnoreCase(holder.getAlgorithmForSign()))
+                return scheme;
+
+        return null;
+    }
+}
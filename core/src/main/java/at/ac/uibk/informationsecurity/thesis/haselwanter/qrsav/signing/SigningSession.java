@@ -0,0 +1,177 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECKey;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyIdentifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+/**
+ * Signs any number of messages with one loaded private key.
+ * <p>
+ * The {@link Signature} instance is initialized once with the private key and reused for every
+ * message, because {@link Signature#sign()} resets it to the initialized state. Hence signing a
+ * message only costs the signature operation itself.
+ * </p>
+ * <p>
+ * Messages are optionally compressed before signing (see {@link #setCompressed(boolean)}).
+ * </p>
+ */
+public class SigningSession {
+    private final Signature signature;
+    private final String keyId;
+    private final byte[] header, deflatedHeader;
+    private final EnvelopeEncoding encoding;
+    private volatile boolean compressed;
+    /**
+     * The length of r and s of raw ECDSA signatures or 0 if signatures are stored as returned by
+     * the provider.
+     */
+    private final int rawComponentLength;
+
+    /**
+     * @param holder     The signature specifications.
+     * @param privateKey The private key used for signing.
+     * @param publicKey  The corresponding public key, which determines the key identifier.
+     * @param encoding   The way the envelopes are put into the QR codes.
+     */
+    public SigningSession(SignatureSpecHolder holder, PrivateKey privateKey, PublicKey publicKey,
+                          EnvelopeEncoding encoding)
+            throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+        this(holder, Signature.getInstance(holder.getAlgorithmForSign(), holder.getProvider()), privateKey,
+                publicKey, encoding);
+    }
+
+    /**
+     * Creates a session which signs with the given {@link Signature}, e.g. of the provider of a key
+     * store whose private keys cannot be used with the configured provider.
+     *
+     * @param holder     The signature specifications.
+     * @param signature  The uninitialized signature of the configured algorithm.
+     * @param privateKey The private key or the key store's handle to it.
+     * @param publicKey  The corresponding public key, which determines the key identifier.
+     * @param encoding   The way the envelopes are put into the QR codes.
+     */
+    public SigningSession(SignatureSpecHolder holder, Signature signature, PrivateKey privateKey,
+                          PublicKey publicKey, EnvelopeEncoding encoding) throws InvalidKeyException {
+        this.signature = signature;
+        signature.initSign(privateKey);
+        keyId = KeyIdentifier.of(publicKey);
+        this.encoding = encoding;
+        SignatureScheme scheme = SignatureScheme.of(holder);
+
+        // Store ECDSA signatures as fixed-length r||s, which saves the DER overhead of 6 to 8 bytes.
+        // The curve is taken from the public key, since key store handles need not expose it.
+        if (publicKey instanceof ECKey && signature.getAlgorithm().toUpperCase().endsWith("WITHECDSA")) {
+            rawComponentLength = EcdsaSignatureFormat.getComponentLength((ECKey) publicKey);
+            header = SignatureEnvelope.header(keyId, SignatureEnvelope.FLAG_RAW_SIGNATURE, scheme);
+        } else {
+            rawComponentLength = 0;
+            header = SignatureEnvelope.header(keyId, 0, scheme);
+        }
+
+        deflatedHeader = header.clone();
+        deflatedHeader[2] |= SignatureEnvelope.FLAG_DEFLATE;
+    }
+
+    /**
+     * Creates a session which puts the envelopes into the QR codes in byte mode.
+     *
+     * @param holder     The signature specifications.
+     * @param privateKey The private key used for signing.
+     * @param publicKey  The corresponding public key, which determines the key identifier.
+     */
+    public SigningSession(SignatureSpecHolder holder, PrivateKey privateKey, PublicKey publicKey)
+            throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+        this(holder, privateKey, publicKey, EnvelopeEncoding.BYTE);
+    }
+
+    /**
+     * Sets whether messages are compressed before signing. A message is compressed only if this
+     * makes it shorter, which is the case for most texts of more than about 20 characters. Not
+     * compressed by default.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Generates a signature for the specific data.
+     *
+     * @param data The data to be signed.
+     * @return The new {@link SignatureEntity}.
+     */
+    public synchronized SignatureEntity sign(byte[] data) throws SignatureException {
+        signature.update(data);
+
+        return new SignatureEntity(signature.sign());
+    }
+
+    /**
+     * Signs a message and builds the content of its QR code, i.e. a binary
+     * {@link SignatureEnvelope} in the session's {@link EnvelopeEncoding}.
+     *
+     * @param text The message to be signed.
+     * @return The content to be encoded.
+     */
+    public String signText(String text) throws SignatureException {
+        return encoding.toContent(signEnvelope(text));
+    }
+
+    /**
+     * Signs a message and builds its binary {@link SignatureEnvelope}, which can be turned into
+     * QR code content in any {@link EnvelopeEncoding}, e.g. to choose the one giving the smaller
+     * code.
+     *
+     * @param text The message to be signed.
+     * @return The binary envelope.
+     */
+    public byte[] signEnvelope(String text) throws SignatureException {
+        byte[] message;
+        byte[] sig;
+
+        try {
+            message = text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is supported by every Java platform.
+            throw new IllegalStateException(e);
+        }
+
+        byte[] hdr = header;
+        if (compressed) {
+            byte[] deflated = MessageCompression.deflate(message);
+
+            if (deflated.length < message.length) {
+                hdr = deflatedHeader;
+                message = deflated;
+            }
+        }
+
+        // The signature covers the envelope's header as well, so the key id cannot be swapped.
+        synchronized (this) {
+            signature.update(hdr);
+            signature.update(message);
+            sig = signature.sign();
+        }
+
+        if (rawComponentLength > 0)
+            sig = EcdsaSignatureFormat.toRaw(sig, rawComponentLength);
+
+        return SignatureEnvelope.seal(hdr, sig, message);
+    }
+
+    /**
+     * Returns the identifier of the key pair used for signing.
+     */
+    public String getKeyId() {
+        return keyId;
+    }
+}
@@ -0,0 +1,218 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopePart;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.FountainPacket;
+
+/**
+ * Decodes a streamed envelope from any of its {@link FountainPacket}s, e.g. the frames a camera
+ * happens to catch. Each packet is reduced by the blocks decoded so far. A packet which combines
+ * a single unknown block decodes it, which in turn may reduce packets received before to a
+ * single unknown block, and so on. Once all blocks are decoded, the envelope is reassembled, so
+ * its signature is verified once for the whole document.
+ * <p>
+ * The packets are decoded per document, so the packets of streams side by side in one frame may
+ * arrive interleaved. Up to {@link #MAX_DOCUMENTS} documents are decoded at a time; a packet of a
+ * further document drops the document which has not received a packet for the longest time.
+ * The packets of the documents completed last are ignored until {@link #reset()}.
+ * </p>
+ */
+public class FountainDecoder {
+    private static final Logger LOG = Logger.getLogger(FountainDecoder.class.getName());
+
+    /**
+     * The maximum number of documents decoded at a time.
+     */
+    public static final int MAX_DOCUMENTS = 4;
+
+    /**
+     * A received packet reduced to the blocks which are not decoded yet.
+     */
+    private static final class Equation {
+        final List<Integer> blocks;
+        final byte[] block;
+
+        Equation(List<Integer> blocks, byte[] block) {
+            this.blocks = blocks;
+            this.block = block;
+        }
+    }
+
+    /**
+     * The blocks of one document decoded so far and the packets which do not decode a block yet.
+     */
+    private static final class Document {
+        final Set<Integer> sequenceNumbers;
+        final List<Equation> pending;
+        final byte[][] blocks;
+        final int length;
+        final int blockLength;
+        int decoded;
+
+        Document(int length, int blockLength) {
+            sequenceNumbers = new HashSet<>();
+            pending = new ArrayList<>();
+            blocks = new byte[(length + blockLength - 1) / blockLength][];
+            this.length = length;
+            this.blockLength = blockLength;
+        }
+
+        /**
+         * Records a decoded block and reduces the pending packets by it, which may decode further
+         * blocks.
+         *
+         * @param single A packet reduced to a single unknown block.
+         */
+        void solve(Equation single) {
+            Queue<Equation> solved = new ArrayDeque<>();
+            solved.add(single);
+
+            while (!solved.isEmpty()) {
+                Equation next = solved.remove();
+                int i = next.blocks.get(0);
+
+                if (blocks[i] != null)
+                    continue;
+
+                blocks[i] = next.block;
+                decoded++;
+
+                for (Iterator<Equation> it = pending.iterator(); it.hasNext(); ) {
+                    Equation eq = it.next();
+
+                    if (!eq.blocks.remove(Integer.valueOf(i)))
+                        continue;
+
+                    xor(eq.block, blocks[i]);
+
+                    if (eq.blocks.size() <= 1) {
+                        if (eq.blocks.size() == 1)
+                            solved.add(eq);
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private final Map<Integer, Document> documents;
+    private final Set<Integer> completedIds;
+    private Document current;
+
+    public FountainDecoder() {
+        // Iterates in access order, i.e. from the least recently used document.
+        documents = new LinkedHashMap<Integer, Document>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Document> eldest) {
+                return size() > MAX_DOCUMENTS;
+            }
+        };
+        completedIds = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > MAX_DOCUMENTS;
+            }
+        });
+    }
+
+    /**
+     * Adds a packet parsed from decoded QR code content by {@link FountainPacket#parse(String)}.
+     *
+     * @param packet The packet.
+     * @return The reassembled envelope as content for the {@link ScanVerifier} if this packet
+     * completed its document; null otherwise.
+     */
+    public synchronized String add(FountainPacket packet) {
+        int id = packet.getDocumentId();
+
+        if (completedIds.contains(id))
+            return null;
+
+        byte[] block = packet.getBlock();
+        Document document = documents.get(id);
+
+        if (document == null || packet.getLength() != document.length || block.length != document.blockLength)
+            documents.put(id, document = new Document(packet.getLength(), block.length));
+        current = document;
+
+        if (!document.sequenceNumbers.add(packet.getSequenceNumber()))
+            return null;
+
+        // Remove the blocks which are decoded already.
+        List<Integer> unknown = new ArrayList<>();
+        for (int i : packet.getBlockIndices()) {
+            if (document.blocks[i] != null)
+                xor(block, document.blocks[i]);
+            else
+                unknown.add(i);
+        }
+
+        if (unknown.size() == 1)
+            document.solve(new Equation(unknown, block));
+        else if (unknown.size() > 1)
+            document.pending.add(new Equation(unknown, block));
+
+        if (document.decoded < document.blocks.length)
+            return null;
+
+        int length = document.length;
+        byte[] envelope = new byte[length];
+        for (int i = 0; i < document.blocks.length; i++)
+            System.arraycopy(document.blocks[i], 0, envelope, i * block.length,
+                    Math.min(block.length, length - i * block.length));
+
+        documents.remove(id);
+        current = null;
+
+        // Packets of different documents with the same id are not reassembled.
+        if (EnvelopePart.documentId(envelope) != id) {
+            LOG.warning("Decoded envelope does not match its document id");
+            return null;
+        }
+
+        completedIds.add(id);
+        return EnvelopeEncoding.BYTE.toContent(envelope);
+    }
+
+    /**
+     * Returns the number of blocks which have been decoded of the document the last packet
+     * belonged to.
+     */
+    public synchronized int getDecoded() {
+        return current == null ? 0 : current.decoded;
+    }
+
+    /**
+     * Returns the number of blocks of the document the last packet belonged to or 0 if no
+     * document is being decoded.
+     */
+    public synchronized int getBlockCount() {
+        return current == null ? 0 : current.blocks.length;
+    }
+
+    /**
+     * Discards the packets received so far and accepts the documents completed last again.
+     */
+    public synchronized void reset() {
+        documents.clear();
+        completedIds.clear();
+        current = null;
+    }
+
+    private static void xor(byte[] target, byte[] block) {
+        for (int j = 0; j < target.length; j++)
+            target[j] ^= block[j];
+    }
+}
@@ -0,0 +1,133 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopePart;
+
+/**
+ * Collects the parts of an envelope split across several QR codes (see {@link EnvelopePart})
+ * in any order, e.g. while scanning them one after another. Once all parts have been collected,
+ * the envelope is reassembled, so its signature is verified once for the whole document.
+ * <p>
+ * The parts are collected per document, so the parts of documents side by side in one frame
+ * may arrive interleaved. Up to {@link #MAX_DOCUMENTS} documents are collected at a time; a part
+ * of a further document drops the document which has not received a part for the longest time.
+ * The parts of the documents completed last are ignored until {@link #reset()}, since they
+ * usually stay in front of the camera for a while.
+ * </p>
+ */
+public class PartCollector {
+    private static final Logger LOG = Logger.getLogger(PartCollector.class.getName());
+
+    /**
+     * The maximum number of documents collected at a time.
+     */
+    public static final int MAX_DOCUMENTS = 4;
+
+    /**
+     * The parts of one document collected so far.
+     */
+    private static final class Document {
+        final byte[][] slices;
+        int received;
+
+        Document(int count) {
+            slices = new byte[count][];
+        }
+    }
+
+    private final Map<Integer, Document> documents;
+    private final Set<Integer> completedIds;
+    private Document current;
+
+    public PartCollector() {
+        // Iterates in access order, i.e. from the least recently used document.
+        documents = new LinkedHashMap<Integer, Document>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Document> eldest) {
+                return size() > MAX_DOCUMENTS;
+            }
+        };
+        completedIds = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > MAX_DOCUMENTS;
+            }
+        });
+    }
+
+    /**
+     * Adds a part parsed from decoded QR code content by {@link EnvelopePart#parse(String)}.
+     *
+     * @param part The part.
+     * @return The reassembled envelope as content for the {@link ScanVerifier} if this has been
+     * the last missing part of its document; null otherwise, e.g. if the part has been collected
+     * before.
+     */
+    public synchronized String add(EnvelopePart part) {
+        int id = part.getDocumentId();
+
+        if (completedIds.contains(id))
+            return null;
+
+        Document document = documents.get(id);
+        if (document == null || part.getCount() != document.slices.length)
+            documents.put(id, document = new Document(part.getCount()));
+        current = document;
+
+        if (document.slices[part.getIndex()] != null)
+            return null;
+
+        document.slices[part.getIndex()] = part.getSlice();
+        if (++document.received < document.slices.length)
+            return null;
+
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+        for (byte[] slice : document.slices)
+            envelope.write(slice, 0, slice.length);
+
+        byte[] bytes = envelope.toByteArray();
+        documents.remove(id);
+        current = null;
+
+        // Parts of different documents with the same id are not reassembled.
+        if (EnvelopePart.documentId(bytes) != id) {
+            LOG.warning("Reassembled envelope does not match its document id");
+            return null;
+        }
+
+        completedIds.add(id);
+        return EnvelopeEncoding.BYTE.toContent(bytes);
+    }
+
+    /**
+     * Returns the number of parts which have been collected of the document the last part
+     * belonged to.
+     */
+    public synchronized int getReceived() {
+        return current == null ? 0 : current.received;
+    }
+
+    /**
+     * Returns the number of parts of the document the last part belonged to or 0 if no part is
+     * being collected.
+     */
+    public synchronized int getCount() {
+        return current == null ? 0 : current.slices.length;
+    }
+
+    /**
+     * Discards the parts collected so far and accepts the documents completed last again.
+     */
+    public synchronized void reset() {
+        documents.clear();
+        completedIds.clear();
+        current = null;
+    }
+}
@@ -0,0 +1,49 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+/**
+ * The immutable result of scanning a QR code, i.e. its content and the outcome of verifying its
+ * signature.
+ */
+public final class ScanResult {
+    public enum Status {
+        /**
+         * The QR code contains a valid signature.
+         */
+        VALID,
+        /**
+         * The QR code contains a signature which could not be verified.
+         */
+        INVALID,
+        /**
+         * The QR code does not contain a signature.
+         */
+        NO_SIGNATURE
+    }
+
+    private final Status status;
+    private final String content;
+    private final String keyId;
+
+    /**
+     * @param status  The outcome of verifying the signature.
+     * @param content The QR code's message without signature. Empty if the signature is invalid.
+     * @param keyId   The signer's key identifier or null if the QR code does not contain one.
+     */
+    public ScanResult(Status status, String content, String keyId) {
+        this.status = status;
+        this.content = content;
+        this.keyId = keyId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+}
@@ -0,0 +1,392 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SignatureEnvelope;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SignatureScheme;
+
+/**
+ * Verifies the signature of decoded QR code contents with the keys of a {@link PublicKeyStore}.
+ * With a {@link VerificationCache} codes which have been verified recently are answered from
+ * the cache.
+ */
+public class ScanVerifier {
+    private static final Logger LOG = Logger.getLogger(ScanVerifier.class.getName());
+
+    private final SignatureSpecHolder specHolder;
+    private final PublicKeyStore keyStore;
+    private final VerificationCache cache;
+
+    /**
+     * @param specHolder The signature specifications.
+     * @param keyStore   The trusted public keys or null if there are none, e.g. if the key
+     *                   directory is not available. Signed codes are invalid then.
+     * @param cache      The cache of recent results or null.
+     */
+    public ScanVerifier(SignatureSpecHolder specHolder, PublicKeyStore keyStore, VerificationCache cache) {
+        this.specHolder = specHolder;
+        this.keyStore = keyStore;
+        this.cache = cache;
+    }
+
+    public ScanVerifier(SignatureSpecHolder specHolder, PublicKeyStore keyStore) {
+        this(specHolder, keyStore, null);
+    }
+
+    /**
+     * Verifies the message's signature of a decoded QR code. A code which cannot be verified
+     * because of an error, e.g. a malformed key file, is invalid, but its result is not cached.
+     *
+     * @param decString The decoded QR code content.
+     * @return The {@link ScanResult}.
+     */
+    public ScanResult verify(String decString) {
+        LOG.fine("Decoded string: " + decString);
+
+        int generation = getGeneration();
+        ScanResult result = cache == null ? null : cache.get(decString, generation);
+
+        if (result != null)
+            return result;
+
+        SignatureHandler sh = new SignatureHandler(specHolder);
+        SignatureEnvelope envelope = SignatureEnvelope.open(sh, decString);
+
+        try {
+            result = verifyUncached(sh, envelope);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException |
+                InvalidKeyException | InvalidKeySpecException | IOException e) {
+            LOG.warning(e.getMessage());
+            return new ScanResult(ScanResult.Status.INVALID, "", envelope.getKeyId());
+        }
+
+        if (cache != null)
+            cache.put(decString, result, generation);
+
+        return result;
+    }
+
+    private ScanResult verifyUncached(SignatureHandler sh, SignatureEnvelope envelope) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeyException, InvalidKeySpecException, IOException {
+        // QR code does not contain a signature.
+        if (!envelope.isSigned())
+            return new ScanResult(ScanResult.Status.NO_SIGNATURE, envelope.getMessage(), null);
+
+        // The keys and the signature handler belong to the configured scheme only.
+        SignatureScheme scheme = envelope.getScheme();
+        if (scheme != null && scheme != SignatureScheme.of(specHolder)) {
+            LOG.warning("Signature scheme " + scheme + " is not configured");
+            return new ScanResult(ScanResult.Status.INVALID, "", envelope.getKeyId());
+        }
+
+        boolean verifies = false;
+
+        try {
+            if (envelope.getKeyId() != null) {
+                // Get the one public key with the given key identifier.
+                PublicKey key = getPublicKey(envelope.getKeyId());
+
+                // No public key with this identifier was found.
+                if (key == null)
+                    LOG.warning("No public key found for key id " + envelope.getKeyId());
+                else
+                    verifies = sh.verify(envelope.getSignature(), envelope.getSignedData(), key);
+            } else {
+                // Get public keys.
+                List<PublicKey> pks = getPublicKeys();
+
+                // No public key was found.
+                if (pks.isEmpty())
+                    LOG.warning("No public key found");
+
+                // QR code without key identifier, hence try all available public keys to verify signature.
+                for (PublicKey key : pks)
+                    if (verifies = sh.verify(envelope.getSignature(), envelope.getSignedData(), key))
+                        break;
+            }
+        } catch (SignatureException e) {
+            // A malformed signature does not verify with any key.
+            LOG.fine(e.getMessage());
+        }
+
+        return verifies ? validResult(envelope) : new ScanResult(ScanResult.Status.INVALID, "", envelope.getKeyId());
+    }
+
+    /**
+     * Verifies the signatures of many decoded QR codes, e.g. a stack of codes scanned in a row.
+     * <p>
+     * The codes are grouped by their signer's key identifier. One {@link Signature} is created for
+     * the whole batch and initialized once per key, because {@link Signature#verify(byte[])}
+     * resets it to the initialized state. Hence the key is looked up and set up once per group
+     * instead of once per code. Codes without key identifier are checked against each key in
+     * turn, again with one initialization per key. The JCA has no batch verification of several
+     * signatures in one operation, so each signature is still verified on its own. Codes found
+     * in the cache are not verified again.
+     * </p>
+     * <p>
+     * An error with one key, e.g. a malformed key file, fails the codes of this key only. They are
+     * invalid, but their results are not cached.
+     * </p>
+     *
+     * @param decStrings The decoded QR code contents.
+     * @return The {@link ScanResult}s in the order of the contents.
+     */
+    public List<ScanResult> verifyAll(List<String> decStrings) {
+        return verifyAll(decStrings, new long[decStrings.size()]);
+    }
+
+    /**
+     * Verifies the signatures of many decoded QR codes like {@link #verifyAll(List)} and measures
+     * the time spent on each code: looking it up in the cache, parsing its envelope and checking
+     * its signature. Setting up a key is counted for the first code of the key's group, which
+     * would have set it up when verified on its own.
+     *
+     * @param decStrings The decoded QR code contents.
+     * @param nanos      Receives the time spent on each code in nanoseconds, in the order of the
+     *                   contents.
+     * @return The {@link ScanResult}s in the order of the contents.
+     */
+    public List<ScanResult> verifyAll(List<String> decStrings, long[] nanos) {
+        int n = decStrings.size();
+        ScanResult[] results = new ScanResult[n];
+        SignatureEnvelope[] envelopes = new SignatureEnvelope[n];
+        Map<String, List<Integer>> byKey = new LinkedHashMap<>();
+        List<Integer> withoutKeyId = new ArrayList<>();
+        SignatureHandler sh = new SignatureHandler(specHolder);
+        SignatureScheme configured = SignatureScheme.of(specHolder);
+        int generation = getGeneration();
+        boolean[] cached = new boolean[n];
+
+        for (int i = 0; i < n; i++) {
+            long start = System.nanoTime();
+
+            if (cache != null && (results[i] = cache.get(decStrings.get(i), generation)) != null) {
+                cached[i] = true;
+                nanos[i] = System.nanoTime() - start;
+                continue;
+            }
+
+            SignatureEnvelope envelope = SignatureEnvelope.open(sh, decStrings.get(i));
+            SignatureScheme scheme = envelope.getScheme();
+            envelopes[i] = envelope;
+
+            if (!envelope.isSigned()) {
+                results[i] = new ScanResult(ScanResult.Status.NO_SIGNATURE, envelope.getMessage(), null);
+            } else if (scheme != null && scheme != configured) {
+                LOG.warning("Signature scheme " + scheme + " is not configured");
+                results[i] = new ScanResult(ScanResult.Status.INVALID, "", envelope.getKeyId());
+            } else if (envelope.getKeyId() == null) {
+                withoutKeyId.add(i);
+            } else {
+                List<Integer> group = byKey.get(envelope.getKeyId());
+                if (group == null)
+                    byKey.put(envelope.getKeyId(), group = new ArrayList<Integer>());
+                group.add(i);
+            }
+
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        // Codes which are not verified because of an error, e.g. a malformed key file. They are
+        // invalid, but their results are not cached.
+        boolean[] failed = new boolean[n];
+        Signature signature = null;
+
+        try {
+            signature = Signature.getInstance(specHolder.getAlgorithmForSign(), specHolder.getProvider());
+        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+            LOG.warning(e.getMessage());
+            Arrays.fill(failed, true);
+        }
+
+        if (signature != null) {
+            for (Map.Entry<String, List<Integer>> group : byKey.entrySet()) {
+                try {
+                    PublicKey key = getPublicKey(group.getKey());
+
+                    if (key == null)
+                        LOG.warning("No public key found for key id " + group.getKey());
+                    else
+                        verifyGroup(signature, key, envelopes, group.getValue(), results, nanos);
+                } catch (NoSuchAlgorithmException | NoSuchProviderException |
+                        InvalidKeyException | InvalidKeySpecException | IOException e) {
+                    LOG.warning(e.getMessage());
+                    for (int i : group.getValue())
+                        failed[i] = true;
+                }
+            }
+
+            // Try all available public keys on the codes which are not verified yet.
+            if (!withoutKeyId.isEmpty())
+                verifyWithAllKeys(signature, envelopes, withoutKeyId, results, failed, nanos);
+        }
+
+        List<ScanResult> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            boolean verified = results[i] != null;
+            ScanResult result = verified ? results[i]
+                    : new ScanResult(ScanResult.Status.INVALID, "", envelopes[i].getKeyId());
+
+            if (cache != null && !cached[i] && (verified || !failed[i]))
+                cache.put(decStrings.get(i), result, generation);
+            list.add(result);
+        }
+
+        return list;
+    }
+
+    /**
+     * Verifies the signatures of many decoded QR codes in parallel, e.g. all codes of one frame.
+     * The codes are split into consecutive parts, each of which is verified by
+     * {@link #verifyAll(List)} on the executor.
+     *
+     * @param decStrings The decoded QR code contents.
+     * @param executor   The executor verifying the parts.
+     * @param parts      The number of parts, e.g. the number of the executor's threads.
+     * @return The {@link ScanResult}s in the order of the contents.
+     */
+    public List<ScanResult> verifyAll(List<String> decStrings, ExecutorService executor, int parts)
+            throws InterruptedException {
+        int n = decStrings.size();
+        parts = Math.max(1, Math.min(parts, n));
+        List<Callable<List<ScanResult>>> tasks = new ArrayList<>(parts);
+
+        for (int p = 0; p < parts; p++) {
+            final List<String> part = decStrings.subList(p * n / parts, (p + 1) * n / parts);
+            tasks.add(new Callable<List<ScanResult>>() {
+                @Override
+                public List<ScanResult> call() {
+                    return verifyAll(part);
+                }
+            });
+        }
+
+        List<ScanResult> results = new ArrayList<>(n);
+        for (Future<List<ScanResult>> f : executor.invokeAll(tasks)) {
+            try {
+                results.addAll(f.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Builds the result of a code with a valid signature. A compressed message which cannot be
+     * inflated makes the code invalid, although its signature is valid.
+     */
+    private static ScanResult validResult(SignatureEnvelope envelope) {
+        try {
+            return new ScanResult(ScanResult.Status.VALID, envelope.getMessage(), envelope.getKeyId());
+        } catch (IllegalArgumentException e) {
+            LOG.warning(e.getMessage());
+            return new ScanResult(ScanResult.Status.INVALID, "", envelope.getKeyId());
+        }
+    }
+
+    private PublicKey getPublicKey(String keyId) throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        return keyStore == null ? null : keyStore.getPublicKey(keyId);
+    }
+
+    private List<PublicKey> getPublicKeys() throws IOException, NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeySpecException {
+        return keyStore == null ? Collections.<PublicKey>emptyList() : keyStore.getPublicKeys();
+    }
+
+    private int getGeneration() {
+        return keyStore == null ? 0 : keyStore.getGeneration();
+    }
+
+    /**
+     * Verifies codes without key identifier with each available public key in turn until all of
+     * them are verified. The codes which are left when a key fails are marked as failed.
+     */
+    private void verifyWithAllKeys(Signature signature, SignatureEnvelope[] envelopes, List<Integer> withoutKeyId,
+                                   ScanResult[] results, boolean[] failed, long[] nanos) {
+        List<PublicKey> pks;
+
+        try {
+            pks = getPublicKeys();
+        } catch (NoSuchAlgorithmException | NoSuchProviderException |
+                InvalidKeySpecException | IOException e) {
+            LOG.warning(e.getMessage());
+            for (int i : withoutKeyId)
+                failed[i] = true;
+            return;
+        }
+
+        if (pks.isEmpty())
+            LOG.warning("No public key found");
+
+        for (PublicKey key : pks) {
+            List<Integer> pending = new ArrayList<>();
+            for (int i : withoutKeyId)
+                if (results[i] == null)
+                    pending.add(i);
+
+            if (pending.isEmpty())
+                break;
+
+            try {
+                verifyGroup(signature, key, envelopes, pending, results, nanos);
+            } catch (InvalidKeyException e) {
+                LOG.warning(e.getMessage());
+                for (int i : pending)
+                    failed[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Verifies the codes of one group with the same public key and records the valid ones. The
+     * time of each check is added to the code's time, setting up the key to the first code's.
+     */
+    private static void verifyGroup(Signature signature, PublicKey key, SignatureEnvelope[] envelopes,
+                                    List<Integer> group, ScanResult[] results, long[] nanos)
+            throws InvalidKeyException {
+        long start = System.nanoTime();
+        signature.initVerify(key);
+
+        for (int i : group) {
+            SignatureEnvelope envelope = envelopes[i];
+
+            try {
+                signature.update(envelope.getSignedData());
+                if (signature.verify(envelope.getSignatureBytes()))
+                    results[i] = validResult(envelope);
+            } catch (SignatureException e) {
+                // A malformed signature may leave the signature in any state.
+                LOG.fine(e.getMessage());
+                signature.initVerify(key);
+            }
+
+            long end = System.nanoTime();
+            nanos[i] += end - start;
+            start = end;
+        }
+    }
+}
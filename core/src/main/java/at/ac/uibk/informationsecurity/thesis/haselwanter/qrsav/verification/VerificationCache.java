@@ -0,0 +1,136 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link ScanResult}s of recently verified QR codes, so that a code scanned again, e.g.
+ * at a turnstile, is answered without verifying its signature.
+ * <p>
+ * The results are looked up by the SHA-256 hash of the decoded content. The cache holds a
+ * bounded number of results and drops the least recently used one when it is full. Results
+ * expire after a fixed time to live.
+ * </p>
+ * <p>
+ * Each result belongs to a generation of the trusted keys (see
+ * {@link at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore#getGeneration()}).
+ * As soon as the keys change all results are dropped, and results of codes which have been
+ * verified with the former keys are not added.
+ * </p>
+ */
+public class VerificationCache {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final class Entry {
+        final ScanResult result;
+        final long expires;
+
+        Entry(ScanResult result, long expires) {
+            this.result = result;
+            this.expires = expires;
+        }
+    }
+
+    private final long ttlNanos;
+    private final Map<ByteBuffer, Entry> entries;
+    private int generation;
+
+    /**
+     * @param maxEntries The maximum number of results.
+     * @param ttlMillis  The time to live of a result in milliseconds.
+     */
+    public VerificationCache(final int maxEntries, long ttlMillis) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("Maximum number of entries < 1: " + maxEntries);
+
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        // Iterates in access order, i.e. from the least recently used entry.
+        entries = new LinkedHashMap<ByteBuffer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        generation = 0;
+    }
+
+    /**
+     * Returns the result of a QR code which has been verified recently with the current keys.
+     *
+     * @param decString  The decoded QR code content.
+     * @param generation The current generation of the trusted keys.
+     * @return The cached {@link ScanResult} or null if there is none.
+     */
+    public synchronized ScanResult get(String decString, int generation) {
+        if (generation != this.generation) {
+            entries.clear();
+            this.generation = generation;
+            return null;
+        }
+
+        ByteBuffer key = hash(decString);
+        Entry entry = entries.get(key);
+
+        if (entry == null)
+            return null;
+
+        if (System.nanoTime() - entry.expires >= 0) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.result;
+    }
+
+    /**
+     * Adds the result of a verified QR code.
+     *
+     * @param decString  The decoded QR code content.
+     * @param result     The {@link ScanResult}.
+     * @param generation The generation of the trusted keys used for verifying.
+     */
+    public synchronized void put(String decString, ScanResult result, int generation) {
+        // The keys have changed while verifying.
+        if (generation != this.generation)
+            return;
+
+        entries.put(hash(decString), new Entry(result, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Drops all expired results.
+     */
+    public synchronized void purge() {
+        long now = System.nanoTime();
+
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+            if (now - it.next().expires >= 0)
+                it.remove();
+    }
+
+    /**
+     * Drops all results.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static ByteBuffer hash(String decString) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(decString.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is supported by every Java platform.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.batch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+
+public class BatchVerifierMainTest {
+    private static final String PAYLOAD = "unsigned message\n";
+
+    private File keyDir;
+    private InputStream in;
+    private PrintStream out, err;
+
+    @Before
+    public void setUp() throws IOException {
+        keyDir = File.createTempFile("qrsav-keys", "");
+        keyDir.delete();
+        keyDir.mkdir();
+
+        in = System.in;
+        out = System.out;
+        err = System.err;
+    }
+
+    @After
+    public void tearDown() {
+        System.setIn(in);
+        System.setOut(out);
+        System.setErr(err);
+        keyDir.delete();
+    }
+
+    @Test
+    public void verifiesStandardInputWithKeyDirOnly() throws Exception {
+        System.setIn(new ByteArrayInputStream(PAYLOAD.getBytes("UTF-8")));
+
+        assertTrue(run(keyDir.getPath()).startsWith("0\tNO_SIGNATURE\t-\t"));
+    }
+
+    @Test
+    public void verifiesPayloadFile() throws Exception {
+        File payloads = File.createTempFile("qrsav-payloads", ".txt");
+
+        try {
+            OutputStream os = new FileOutputStream(payloads);
+            try {
+                os.write(PAYLOAD.getBytes("UTF-8"));
+            } finally {
+                os.close();
+            }
+
+            assertTrue(run(keyDir.getPath(), payloads.getPath()).startsWith("0\tNO_SIGNATURE\t-\t"));
+        } finally {
+            payloads.delete();
+        }
+    }
+
+    @Test
+    public void verifiesPostedPayloads() throws Exception {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(messages, true, "UTF-8"));
+        run(keyDir.getPath(), "--http", "0");
+
+        Matcher m = Pattern.compile("http://localhost:\\d+/verify").matcher(messages.toString("UTF-8"));
+        assertTrue(m.find());
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(m.group()).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.getOutputStream().write(PAYLOAD.getBytes("UTF-8"));
+
+        Scanner scanner = new Scanner(connection.getInputStream(), "UTF-8");
+        try {
+            assertTrue(scanner.nextLine().startsWith("0\tNO_SIGNATURE\t-\t"));
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private static String run(String... args) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, "UTF-8"));
+        BatchVerifierMain.main(args);
+
+        return bytes.toString("UTF-8");
+    }
+}
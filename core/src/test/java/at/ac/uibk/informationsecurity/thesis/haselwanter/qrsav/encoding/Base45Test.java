@@ -0,0 +1,69 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.encoding;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Base45Test {
+    private static final String[][] RFC_9285_VECTORS = {
+            {"AB", "BB8"},
+            {"Hello!!", "%69 VD92EX0"},
+            {"base-45", "UJCLQE7W581"},
+            {"ietf!", "QED8WEX0"},
+    };
+
+    @Test
+    public void encodesRfcVectors() throws Exception {
+        for (String[] vector : RFC_9285_VECTORS)
+            assertEquals(vector[1], Base45.encode(vector[0].getBytes("US-ASCII")));
+    }
+
+    @Test
+    public void decodesRfcVectors() throws Exception {
+        for (String[] vector : RFC_9285_VECTORS)
+            assertEquals(vector[0], new String(Base45.decode(vector[1]), "US-ASCII"));
+    }
+
+    @Test
+    public void roundTripsAllLengths() {
+        Random random = new Random(1);
+
+        for (int length = 0; length < 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            assertArrayEquals(data, Base45.decode(Base45.encode(data)));
+        }
+    }
+
+    @Test
+    public void roundTripsExtremeValues() {
+        byte[] data = {(byte) 0xFF, (byte) 0xFF, 0, 0, (byte) 0xFF};
+
+        assertArrayEquals(data, Base45.decode(Base45.encode(data)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidLength() {
+        Base45.decode("BB8B");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTripleAboveTwoBytes() {
+        // ":::" is 44 + 44 * 45 + 44 * 2025 = 91124.
+        Base45.decode(":::");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPairAboveOneByte() {
+        Base45.decode("::");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLowerCase() {
+        Base45.decode("bb8");
+    }
+}
@@ -0,0 +1,82 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.InvalidKeySpecException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EcPointCompressionTest {
+    @Test
+    public void decompressesBothParities() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        boolean[] parities = new boolean[2];
+
+        for (int i = 0; i < 20; i++) {
+            ECPublicKey key = (ECPublicKey) generator.generateKeyPair().getPublic();
+            byte[] point = EcPointCompression.compress(key);
+
+            assertEquals(33, point.length);
+            assertEquals(key.getW(), EcPointCompression.decompress(point, key.getParams()));
+            parities[point[0] - 2] = true;
+        }
+
+        assertTrue(parities[0] && parities[1]);
+    }
+
+    @Test
+    public void readsCompressedKeyFile() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        KeyFactory keyFactory = KeyFactory.getInstance("EC", "SunEC");
+        File file = File.createTempFile("qrsav-key", "-ec.pub");
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                ECPublicKey key = (ECPublicKey) generator.generateKeyPair().getPublic();
+                KeyFiles.writePublicKey(file, key, true);
+
+                assertTrue(file.length() < key.getEncoded().length);
+
+                PublicKey read = KeyFiles.readPublicKey(file, keyFactory);
+                assertEquals(key.getW(), ((ECPublicKey) read).getW());
+                assertEquals(KeyIdentifier.of(key), KeyIdentifier.of(read));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = InvalidKeySpecException.class)
+    public void rejectsPointNotOnCurve() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        ECPublicKey key = (ECPublicKey) generator.generateKeyPair().getPublic();
+
+        // About half of all x are not on the curve.
+        for (int x = 1; x < 100; x++) {
+            byte[] point = new byte[33];
+            point[0] = 2;
+            point[32] = (byte) x;
+            EcPointCompression.decompress(point, key.getParams());
+        }
+    }
+
+    @Test(expected = InvalidKeySpecException.class)
+    public void rejectsUncompressedPoint() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        ECPublicKey key = (ECPublicKey) generator.generateKeyPair().getPublic();
+        byte[] point = EcPointCompression.compress(key);
+        point[0] = 4;
+
+        EcPointCompression.decompress(point, key.getParams());
+    }
+}
@@ -0,0 +1,102 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EcdsaSignatureFormatTest {
+    private static final int LENGTH = 32;
+
+    @Test
+    public void stripsLeadingZerosAndPadsHighBit() {
+        byte[] raw = new byte[2 * LENGTH];
+        // r with two leading zero bytes.
+        Arrays.fill(raw, 2, LENGTH, (byte) 0x7F);
+        // s with the high bit set.
+        Arrays.fill(raw, LENGTH, 2 * LENGTH, (byte) 0xFF);
+
+        byte[] der = EcdsaSignatureFormat.toDer(raw);
+
+        // SEQUENCE of INTEGER r of 30 bytes and INTEGER s of 33 bytes with a leading zero.
+        assertEquals(2 + 2 + 30 + 2 + 33, der.length);
+        assertEquals(0x30, der[0]);
+        assertEquals(der.length - 2, der[1]);
+        assertEquals(0x02, der[2]);
+        assertEquals(30, der[3]);
+        assertEquals(0x7F, der[4]);
+        assertEquals(0x02, der[4 + 30]);
+        assertEquals(33, der[5 + 30]);
+        assertEquals(0x00, der[6 + 30]);
+        assertEquals((byte) 0xFF, der[7 + 30]);
+
+        assertArrayEquals(raw, EcdsaSignatureFormat.toRaw(der, LENGTH));
+    }
+
+    @Test
+    public void convertsZeroComponent() {
+        byte[] raw = new byte[2 * LENGTH];
+        raw[2 * LENGTH - 1] = 1;
+
+        assertArrayEquals(raw, EcdsaSignatureFormat.toRaw(EcdsaSignatureFormat.toDer(raw), LENGTH));
+    }
+
+    @Test
+    public void roundTripsSignatures() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        KeyPair keys = generator.generateKeyPair();
+        int length = EcdsaSignatureFormat.getComponentLength((ECPublicKey) keys.getPublic());
+        byte[] data = "message".getBytes("UTF-8");
+        Signature signature = Signature.getInstance("SHA256withECDSA", "SunEC");
+
+        assertEquals(LENGTH, length);
+
+        // Some of the signatures have components with leading zeros or the high bit set.
+        for (int i = 0; i < 100; i++) {
+            signature.initSign(keys.getPrivate());
+            signature.update(data);
+            byte[] der = signature.sign();
+            byte[] raw = EcdsaSignatureFormat.toRaw(der, length);
+
+            assertEquals(2 * LENGTH, raw.length);
+            assertArrayEquals(der, EcdsaSignatureFormat.toDer(raw));
+
+            signature.initVerify(keys.getPublic());
+            signature.update(data);
+            assertTrue(signature.verify(EcdsaSignatureFormat.toDer(raw)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddRawLength() {
+        EcdsaSignatureFormat.toDer(new byte[2 * LENGTH - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTrailingBytes() {
+        byte[] der = EcdsaSignatureFormat.toDer(filled(2 * LENGTH, 0x11));
+
+        EcdsaSignatureFormat.toRaw(Arrays.copyOf(der, der.length + 1), LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsComponentLongerThanCurve() {
+        byte[] der = EcdsaSignatureFormat.toDer(filled(2 * (LENGTH + 1), 0x11));
+
+        EcdsaSignatureFormat.toRaw(der, LENGTH);
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
@@ -0,0 +1,55 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageCompressionTest {
+    @Test
+    public void roundTrips() throws Exception {
+        byte[] message = "Pallet: 12 Batch: 4711 Best before: 2031-12-31 Origin: Austria".getBytes("UTF-8");
+        byte[] deflated = MessageCompression.deflate(message);
+
+        assertTrue(deflated.length < message.length);
+        assertArrayEquals(message, MessageCompression.inflate(deflated));
+    }
+
+    @Test
+    public void roundTripsEmptyMessage() throws Exception {
+        byte[] deflated = MessageCompression.deflate(new byte[0]);
+
+        assertTrue(deflated.length > 0);
+        assertEquals(0, MessageCompression.inflate(deflated).length);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void rejectsEmptyStream() throws Exception {
+        MessageCompression.inflate(new byte[0]);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void rejectsTruncatedStream() throws Exception {
+        byte[] deflated = MessageCompression.deflate("Warehouse: Shelf: Customer: 42".getBytes("UTF-8"));
+
+        MessageCompression.inflate(Arrays.copyOf(deflated, deflated.length - 2));
+    }
+
+    @Test
+    public void inflatesMaximumLength() throws Exception {
+        byte[] message = new byte[MessageCompression.MAX_MESSAGE_LENGTH];
+
+        assertEquals(message.length, MessageCompression.inflate(MessageCompression.deflate(message)).length);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void rejectsMessageExceedingMaximumLength() throws Exception {
+        byte[] deflated = MessageCompression.deflate(new byte[MessageCompression.MAX_MESSAGE_LENGTH + 1]);
+
+        MessageCompression.inflate(deflated);
+    }
+}
@@ -0,0 +1,146 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyIdentifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SignatureEnvelopeTest {
+    private static final String MESSAGE = "Pallet: 12 Batch: 4711 Origin: Österreich";
+
+    private SignatureSpecHolder holder;
+    private SignatureHandler sh;
+    private KeyPair keys;
+    private String keyId;
+
+    @Before
+    public void setUp() throws Exception {
+        holder = SignatureSpecHolder.getInstance();
+        holder.setSpecs("EC", "SHA256withECDSA", "SunEC");
+        sh = new SignatureHandler(holder);
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        keys = generator.generateKeyPair();
+        keyId = KeyIdentifier.of(keys.getPublic());
+    }
+
+    @Test
+    public void opensCurrentVersion() throws Exception {
+        for (EnvelopeEncoding encoding : EnvelopeEncoding.values()) {
+            SigningSession session = new SigningSession(holder, keys.getPrivate(), keys.getPublic(), encoding);
+            SignatureEnvelope envelope = SignatureEnvelope.open(sh, session.signText(MESSAGE));
+
+            assertEquals(SignatureEnvelope.VERSION, envelope.getVersion());
+            assertEquals(SignatureScheme.ECDSA_P256, envelope.getScheme());
+            assertEquals(keyId, envelope.getKeyId());
+            assertEquals(MESSAGE, envelope.getMessage());
+            assertFalse(envelope.isCompressed());
+            assertTrue(verifies(envelope));
+        }
+    }
+
+    @Test
+    public void opensCompressedMessage() throws Exception {
+        SigningSession session = new SigningSession(holder, keys.getPrivate(), keys.getPublic());
+        session.setCompressed(true);
+        String message = "Warehouse: Shelf: Customer: Order no. Item: Pallet: Quantity: 120 pcs Weight: 80 kg";
+        SignatureEnvelope envelope = SignatureEnvelope.open(sh, session.signText(message));
+
+        assertTrue(envelope.isCompressed());
+        assertEquals(message, envelope.getMessage());
+        assertTrue(verifies(envelope));
+    }
+
+    @Test
+    public void opensVersion1() throws Exception {
+        // magic | version | flags | key id | signature length | signature | message
+        byte[] header = new byte[3 + KeyIdentifier.LENGTH];
+        header[0] = (byte) SignatureEnvelope.MAGIC;
+        header[1] = SignatureEnvelope.VERSION_1;
+        System.arraycopy(KeyIdentifier.toBytes(keyId), 0, header, 3, KeyIdentifier.LENGTH);
+        byte[] message = MESSAGE.getBytes("UTF-8");
+
+        Signature signature = Signature.getInstance("SHA256withECDSA", "SunEC");
+        signature.initSign(keys.getPrivate());
+        signature.update(header);
+        signature.update(message);
+        byte[] bytes = SignatureEnvelope.seal(header, signature.sign(), message);
+
+        SignatureEnvelope envelope = SignatureEnvelope.open(sh, EnvelopeEncoding.BYTE.toContent(bytes));
+        assertEquals(SignatureEnvelope.VERSION_1, envelope.getVersion());
+        assertNull(envelope.getScheme());
+        assertEquals(keyId, envelope.getKeyId());
+        assertEquals(MESSAGE, envelope.getMessage());
+        assertTrue(verifies(envelope));
+    }
+
+    @Test
+    public void opensLegacyText() throws Exception {
+        byte[] message = MESSAGE.getBytes("UTF-8");
+        String text = KeyIdentifier.prepend(keyId, MESSAGE.concat(sh.sign(message, keys.getPrivate()).toString()));
+        SignatureEnvelope envelope = SignatureEnvelope.open(sh, text);
+
+        assertEquals(SignatureEnvelope.VERSION_LEGACY, envelope.getVersion());
+        assertEquals(keyId, envelope.getKeyId());
+        assertEquals(MESSAGE, envelope.getMessage());
+        assertTrue(sh.verify(envelope.getSignature(), envelope.getSignedData(), keys.getPublic()));
+    }
+
+    @Test
+    public void opensUnsignedText() {
+        SignatureEnvelope envelope = SignatureEnvelope.open(sh, MESSAGE);
+
+        assertFalse(envelope.isSigned());
+        assertEquals(MESSAGE, envelope.getMessage());
+    }
+
+    @Test
+    public void tamperedHeaderDoesNotVerify() throws Exception {
+        byte[] bytes = new SigningSession(holder, keys.getPrivate(), keys.getPublic()).signEnvelope(MESSAGE);
+        // Claim another scheme.
+        bytes[3] ^= 1;
+
+        SignatureEnvelope envelope = SignatureEnvelope.open(sh, EnvelopeEncoding.BYTE.toContent(bytes));
+        assertEquals(SignatureEnvelope.VERSION, envelope.getVersion());
+        assertFalse(verifies(envelope));
+    }
+
+    @Test
+    public void unknownFlagIsNotOpenedAsEnvelope() throws Exception {
+        byte[] bytes = new SigningSession(holder, keys.getPrivate(), keys.getPublic()).signEnvelope(MESSAGE);
+        bytes[2] |= 0x80;
+
+        SignatureEnvelope envelope = SignatureEnvelope.open(sh, EnvelopeEncoding.BYTE.toContent(bytes));
+        assertEquals(SignatureEnvelope.VERSION_LEGACY, envelope.getVersion());
+        assertFalse(envelope.isSigned());
+    }
+
+    @Test
+    public void truncatedEnvelopeIsNotOpenedAsEnvelope() throws Exception {
+        byte[] bytes = new SigningSession(holder, keys.getPrivate(), keys.getPublic()).signEnvelope("");
+        byte[] truncated = new byte[10];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertEquals(SignatureEnvelope.VERSION_LEGACY,
+                SignatureEnvelope.open(sh, EnvelopeEncoding.BYTE.toContent(truncated)).getVersion());
+    }
+
+    private boolean verifies(SignatureEnvelope envelope) throws Exception {
+        Signature signature = Signature.getInstance("SHA256withECDSA", "SunEC");
+        signature.initVerify(keys.getPublic());
+        signature.update(envelope.getSignedData());
+        return signature.verify(envelope.getSignatureBytes());
+    }
+}
@@ -0,0 +1,95 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.FountainEncoder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.FountainPacket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FountainDecoderTest {
+    private static final int BLOCK_LENGTH = 64;
+    private static final int MAX_PACKETS = 1000;
+
+    @Test
+    public void decodesAllPackets() {
+        byte[] envelope = PartCollectorTest.envelope(1, 1000);
+        FountainEncoder encoder = new FountainEncoder(envelope, BLOCK_LENGTH);
+        FountainDecoder decoder = new FountainDecoder();
+
+        // The first packets carry the blocks in order.
+        for (int seq = 0; seq < encoder.getBlockCount() - 1; seq++) {
+            assertNull(decoder.add(packet(encoder, seq)));
+            assertEquals(seq + 1, decoder.getDecoded());
+            assertEquals(encoder.getBlockCount(), decoder.getBlockCount());
+        }
+        assertEquals(EnvelopeEncoding.BYTE.toContent(envelope),
+                decoder.add(packet(encoder, encoder.getBlockCount() - 1)));
+    }
+
+    @Test
+    public void decodesWithDroppedPackets() {
+        for (int seed = 1; seed <= 20; seed++) {
+            byte[] envelope = PartCollectorTest.envelope(seed, 500 + 97 * seed);
+            FountainEncoder encoder = new FountainEncoder(envelope, BLOCK_LENGTH);
+            FountainDecoder decoder = new FountainDecoder();
+            Random random = new Random(seed);
+            String document = null;
+            int seq;
+
+            // Drop about half of the packets, in particular systematic ones.
+            for (seq = 0; document == null && seq < MAX_PACKETS; seq++)
+                if (random.nextBoolean())
+                    document = decoder.add(packet(encoder, seq));
+
+            assertEquals(EnvelopeEncoding.BYTE.toContent(envelope), document);
+            assertTrue(seq < MAX_PACKETS);
+        }
+    }
+
+    @Test
+    public void decodesInterleavedStreams() {
+        byte[] first = PartCollectorTest.envelope(30, 800), second = PartCollectorTest.envelope(31, 1200);
+        FountainEncoder firstEncoder = new FountainEncoder(first, BLOCK_LENGTH);
+        FountainEncoder secondEncoder = new FountainEncoder(second, BLOCK_LENGTH);
+        FountainDecoder decoder = new FountainDecoder();
+        String firstDocument = null, secondDocument = null;
+
+        for (int seq = 1; (firstDocument == null || secondDocument == null) && seq < MAX_PACKETS; seq += 2) {
+            if (firstDocument == null)
+                firstDocument = decoder.add(packet(firstEncoder, seq));
+            if (secondDocument == null)
+                secondDocument = decoder.add(packet(secondEncoder, seq));
+        }
+
+        assertEquals(EnvelopeEncoding.BYTE.toContent(first), firstDocument);
+        assertEquals(EnvelopeEncoding.BYTE.toContent(second), secondDocument);
+    }
+
+    @Test
+    public void ignoresCompletedDocumentUntilReset() {
+        FountainEncoder encoder = new FountainEncoder(PartCollectorTest.envelope(40, 100), BLOCK_LENGTH);
+        FountainDecoder decoder = new FountainDecoder();
+
+        assertNull(decoder.add(packet(encoder, 0)));
+        assertNotNull(decoder.add(packet(encoder, 1)));
+        assertNull(decoder.add(packet(encoder, 2)));
+        assertNull(decoder.add(packet(encoder, 3)));
+
+        decoder.reset();
+        assertNull(decoder.add(packet(encoder, 2)));
+        assertNotNull(decoder.add(packet(encoder, 3)));
+    }
+
+    private static FountainPacket packet(FountainEncoder encoder, int seq) {
+        FountainPacket packet = FountainPacket.parse(EnvelopeEncoding.BYTE.toContent(encoder.packet(seq)));
+        assertNotNull(packet);
+        return packet;
+    }
+}
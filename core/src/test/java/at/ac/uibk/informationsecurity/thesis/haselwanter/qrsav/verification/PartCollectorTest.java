@@ -0,0 +1,144 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopeEncoding;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.EnvelopePart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PartCollectorTest {
+    private static final int MAX_LENGTH = 256;
+
+    @Test
+    public void reassemblesShuffledParts() {
+        byte[] envelope = envelope(1, 1000);
+        List<EnvelopePart> parts = parts(envelope, EnvelopeEncoding.BYTE);
+        Collections.shuffle(parts, new Random(1));
+        PartCollector collector = new PartCollector();
+
+        assertEquals(4, parts.size());
+        for (int i = 0; i < parts.size() - 1; i++) {
+            assertNull(collector.add(parts.get(i)));
+            assertEquals(i + 1, collector.getReceived());
+            assertEquals(parts.size(), collector.getCount());
+        }
+        assertEquals(EnvelopeEncoding.BYTE.toContent(envelope), collector.add(parts.get(parts.size() - 1)));
+    }
+
+    @Test
+    public void reassemblesBase45Parts() {
+        byte[] envelope = envelope(2, 600);
+        PartCollector collector = new PartCollector();
+        String document = null;
+
+        for (EnvelopePart part : parts(envelope, EnvelopeEncoding.BASE45))
+            document = collector.add(part);
+
+        assertEquals(EnvelopeEncoding.BYTE.toContent(envelope), document);
+    }
+
+    @Test
+    public void collectsInterleavedDocuments() {
+        byte[] first = envelope(3, 700), second = envelope(4, 900);
+        List<EnvelopePart> firstParts = parts(first, EnvelopeEncoding.BYTE);
+        List<EnvelopePart> secondParts = parts(second, EnvelopeEncoding.BYTE);
+        PartCollector collector = new PartCollector();
+        List<String> documents = new ArrayList<>();
+
+        for (int i = 0; i < Math.max(firstParts.size(), secondParts.size()); i++) {
+            if (i < firstParts.size())
+                addIfComplete(documents, collector.add(firstParts.get(i)));
+            if (i < secondParts.size())
+                addIfComplete(documents, collector.add(secondParts.get(i)));
+        }
+
+        assertEquals(2, documents.size());
+        assertEquals(EnvelopeEncoding.BYTE.toContent(first), documents.get(0));
+        assertEquals(EnvelopeEncoding.BYTE.toContent(second), documents.get(1));
+    }
+
+    @Test
+    public void rejectsForeignPartWithSameDocumentId() {
+        byte[] envelope = envelope(5, 500);
+        List<byte[]> bytes = EnvelopePart.split(envelope, MAX_LENGTH);
+        // The last part of another envelope under this envelope's id.
+        byte[] foreign = bytes.get(bytes.size() - 1).clone();
+        foreign[foreign.length - 1] ^= 1;
+        bytes.set(bytes.size() - 1, foreign);
+        PartCollector collector = new PartCollector();
+
+        for (byte[] part : bytes)
+            assertNull(collector.add(EnvelopePart.parse(EnvelopeEncoding.BYTE.toContent(part))));
+    }
+
+    @Test
+    public void ignoresCompletedDocumentUntilReset() {
+        List<EnvelopePart> parts = parts(envelope(6, 300), EnvelopeEncoding.BYTE);
+        PartCollector collector = new PartCollector();
+
+        assertNull(collector.add(parts.get(0)));
+        assertNotNull(collector.add(parts.get(1)));
+        assertNull(collector.add(parts.get(0)));
+        assertNull(collector.add(parts.get(1)));
+
+        collector.reset();
+        assertNull(collector.add(parts.get(0)));
+        assertNotNull(collector.add(parts.get(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyParts() {
+        EnvelopePart.split(envelope(7, EnvelopePart.MAX_PARTS * (MAX_LENGTH - EnvelopePart.HEADER_LENGTH) + 1),
+                MAX_LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaxLengthOfHeaderOnly() {
+        EnvelopePart.split(envelope(8, 100), EnvelopePart.HEADER_LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaxLengthBelowHeader() {
+        EnvelopePart.split(envelope(9, 100), EnvelopePart.HEADER_LENGTH - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyEnvelope() {
+        EnvelopePart.split(new byte[0], MAX_LENGTH);
+    }
+
+    private static void addIfComplete(List<String> documents, String document) {
+        if (document != null)
+            documents.add(document);
+    }
+
+    private static List<EnvelopePart> parts(byte[] envelope, EnvelopeEncoding encoding) {
+        List<EnvelopePart> parts = new ArrayList<>();
+
+        for (byte[] part : EnvelopePart.split(envelope, MAX_LENGTH)) {
+            EnvelopePart parsed = EnvelopePart.parse(encoding.toContent(part));
+            assertNotNull(parsed);
+            parts.add(parsed);
+        }
+
+        return parts;
+    }
+
+    /**
+     * Builds random bytes in place of a binary envelope.
+     */
+    static byte[] envelope(int seed, int length) {
+        byte[] envelope = new byte[length];
+        new Random(seed).nextBytes(envelope);
+        envelope[0] = (byte) 0xFF;
+        return envelope;
+    }
+}
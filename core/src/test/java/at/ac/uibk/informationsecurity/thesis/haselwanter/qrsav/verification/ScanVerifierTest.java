@@ -0,0 +1,128 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.List;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.KeyIdentifier;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signing.SigningSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanVerifierTest {
+    /**
+     * A key store whose key file of one signer cannot be read until it is repaired.
+     */
+    private static class BrokenKeyStore extends PublicKeyStore {
+        private final String brokenKeyId;
+        private boolean broken = true;
+
+        BrokenKeyStore(SignatureSpecHolder holder, File dir, String brokenKeyId) {
+            super(holder, dir, ".pub");
+            this.brokenKeyId = brokenKeyId;
+        }
+
+        @Override
+        public PublicKey getPublicKey(String keyId) throws IOException, NoSuchAlgorithmException,
+                NoSuchProviderException, InvalidKeySpecException {
+            if (broken && brokenKeyId.equals(keyId))
+                throw new IOException("Malformed key file");
+
+            return super.getPublicKey(keyId);
+        }
+    }
+
+    private SignatureSpecHolder holder;
+    private KeyPair alice, bob;
+    private File noKeys;
+
+    @Before
+    public void setUp() throws Exception {
+        holder = SignatureSpecHolder.getInstance();
+        holder.setSpecs("EC", "SHA256withECDSA", "SunEC");
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "SunEC");
+        generator.initialize(256);
+        alice = generator.generateKeyPair();
+        bob = generator.generateKeyPair();
+
+        // The stores are filled in memory, their key directory does not exist.
+        noKeys = File.createTempFile("qrsav-keys", "");
+        noKeys.delete();
+    }
+
+    @Test
+    public void keyErrorFailsItsGroupOnlyAndIsNotCached() throws Exception {
+        BrokenKeyStore store = new BrokenKeyStore(holder, noKeys, KeyIdentifier.of(alice.getPublic()));
+        store.load();
+        store.addKey("alice", alice.getPublic());
+        store.addKey("bob", bob.getPublic());
+        ScanVerifier verifier = new ScanVerifier(holder, store, new VerificationCache(10, 60 * 1000));
+
+        List<String> codes = Arrays.asList(sign(alice, "from alice"), sign(bob, "from bob"));
+        List<ScanResult> results = verifier.verifyAll(codes);
+        assertEquals(ScanResult.Status.INVALID, results.get(0).getStatus());
+        assertEquals(ScanResult.Status.VALID, results.get(1).getStatus());
+
+        store.broken = false;
+        results = verifier.verifyAll(codes);
+        assertEquals(ScanResult.Status.VALID, results.get(0).getStatus());
+        assertEquals("from alice", results.get(0).getContent());
+    }
+
+    @Test
+    public void keyErrorOfSingleCodeIsNotCached() throws Exception {
+        BrokenKeyStore store = new BrokenKeyStore(holder, noKeys, KeyIdentifier.of(alice.getPublic()));
+        store.load();
+        store.addKey("alice", alice.getPublic());
+        ScanVerifier verifier = new ScanVerifier(holder, store, new VerificationCache(10, 60 * 1000));
+        String code = sign(alice, "from alice");
+
+        assertEquals(ScanResult.Status.INVALID, verifier.verify(code).getStatus());
+        store.broken = false;
+        assertEquals(ScanResult.Status.VALID, verifier.verify(code).getStatus());
+    }
+
+    @Test
+    public void measuresEachCode() throws Exception {
+        PublicKeyStore store = new PublicKeyStore(holder, noKeys, ".pub");
+        store.load();
+        store.addKey("alice", alice.getPublic());
+        ScanVerifier verifier = new ScanVerifier(holder, store);
+        long[] nanos = new long[3];
+
+        List<ScanResult> results = verifier.verifyAll(Arrays.asList("unsigned", sign(alice, "signed"),
+                "unsigned"), nanos);
+        assertEquals(ScanResult.Status.VALID, results.get(1).getStatus());
+        // Checking a signature takes much longer than parsing an unsigned code.
+        assertTrue(nanos[1] > nanos[0]);
+        assertTrue(nanos[1] > nanos[2]);
+    }
+
+    @Test
+    public void signedCodesAreInvalidWithoutKeyStore() throws Exception {
+        ScanVerifier verifier = new ScanVerifier(holder, null, new VerificationCache(10, 60 * 1000));
+        String code = sign(alice, "from alice");
+
+        assertEquals(ScanResult.Status.INVALID, verifier.verify(code).getStatus());
+        assertEquals(ScanResult.Status.NO_SIGNATURE, verifier.verify("unsigned").getStatus());
+        assertEquals(ScanResult.Status.INVALID, verifier.verifyAll(Arrays.asList(code)).get(0).getStatus());
+    }
+
+    private String sign(KeyPair keys, String message) throws Exception {
+        return new SigningSession(holder, keys.getPrivate(), keys.getPublic()).signText(message);
+    }
+}
@@ -0,0 +1,101 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.verification;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.security.KeyPairGenerator;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.keys.PublicKeyStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class VerificationCacheTest {
+    private static final long TTL_MILLIS = 60 * 1000;
+
+    private final ScanResult valid = new ScanResult(ScanResult.Status.VALID, "message", "01020304");
+
+    @Test
+    public void returnsResultOfSameGeneration() {
+        VerificationCache cache = new VerificationCache(10, TTL_MILLIS);
+        cache.put("code", valid, 0);
+
+        assertSame(valid, cache.get("code", 0));
+        assertNull(cache.get("other code", 0));
+    }
+
+    @Test
+    public void newGenerationDropsAllResults() {
+        VerificationCache cache = new VerificationCache(10, TTL_MILLIS);
+        cache.put("code", valid, 0);
+        cache.put("other code", valid, 0);
+
+        assertNull(cache.get("code", 1));
+        assertEquals(0, cache.size());
+        // Results of the former generation are not found again.
+        assertNull(cache.get("other code", 0));
+    }
+
+    @Test
+    public void ignoresResultOfFormerGeneration() {
+        VerificationCache cache = new VerificationCache(10, TTL_MILLIS);
+        assertNull(cache.get("code", 1));
+
+        // Verified with the keys of generation 0 while the keys changed.
+        cache.put("code", valid, 0);
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get("code", 1));
+    }
+
+    @Test
+    public void keyStoreChangesStartNewGeneration() throws Exception {
+        SignatureSpecHolder holder = SignatureSpecHolder.getInstance();
+        holder.setSpecs("EC", "SHA256withECDSA", "SunEC");
+        File noKeys = File.createTempFile("qrsav-keys", "");
+        noKeys.delete();
+        PublicKeyStore store = new PublicKeyStore(holder, noKeys, ".pub");
+        store.load();
+        VerificationCache cache = new VerificationCache(10, TTL_MILLIS);
+
+        // Looked up before verifying, like the scan verifier does.
+        int generation = store.getGeneration();
+        assertNull(cache.get("code", generation));
+        cache.put("code", valid, generation);
+        assertSame(valid, cache.get("code", store.getGeneration()));
+
+        store.removeKey("unknown");
+        assertEquals(generation, store.getGeneration());
+
+        store.addKey("key", KeyPairGenerator.getInstance("EC", "SunEC").generateKeyPair().getPublic());
+        assertNotEquals(generation, store.getGeneration());
+        assertNull(cache.get("code", store.getGeneration()));
+    }
+
+    @Test
+    public void dropsLeastRecentlyUsedResult() {
+        VerificationCache cache = new VerificationCache(2, TTL_MILLIS);
+        cache.put("first", valid, 0);
+        cache.put("second", valid, 0);
+        cache.get("first", 0);
+        cache.put("third", valid, 0);
+
+        assertSame(valid, cache.get("first", 0));
+        assertNull(cache.get("second", 0));
+        assertSame(valid, cache.get("third", 0));
+    }
+
+    @Test
+    public void expiresResults() {
+        VerificationCache cache = new VerificationCache(10, 0);
+        cache.put("code", valid, 0);
+
+        assertNull(cache.get("code", 0));
+        cache.put("code", valid, 0);
+        cache.purge();
+        assertEquals(0, cache.size());
+    }
+}